@@ -24,10 +24,29 @@ package com.vonage.sample.serversdk.springboot;
 import com.vonage.client.account.*;
 import com.vonage.client.insight.*;
 import com.vonage.client.numbers.*;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Controller
@@ -36,6 +55,27 @@ public class AccountController extends VonageController {
 			ACCOUNT_TEMPLATE = "account",
 			ACCOUNT_PARAMS_NAME = "accountParams";
 
+	@Autowired
+	private PricingCache pricingCache;
+
+	@Autowired
+	private BalanceCache balanceCache;
+
+	@Autowired
+	private InsightCache insightCache;
+
+	@Autowired
+	private NumberInventory numberInventory;
+
+	@Autowired
+	private NumberReservoir numberReservoir;
+
+	@Autowired
+	private FanOutStreamer fanOutStreamer;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
 	protected AccountClient getAccountClient() {
 		return getVonageClient().getAccountClient();
 	}
@@ -49,21 +89,32 @@ public class AccountController extends VonageController {
 	}
 
 	String addParamsAndReturnTemplate(AccountParams accountParams, Model model) {
-		var balanceResponse = getAccountClient().getBalance();
-		accountParams.balance = formatMoney("EUR", balanceResponse.getValue());
+		var balance = balanceCache.current();
+		if (balance != null) {
+			accountParams.balance = formatMoney("EUR", balance.value());
+			accountParams.balanceUpdated = formatInstant(balance.updatedAt());
+		}
+		else {
+			accountParams.balance = "loading...";
+		}
 		model.addAttribute(ACCOUNT_PARAMS_NAME, accountParams);
 		return ACCOUNT_TEMPLATE;
 	}
 
 	@PostMapping("buyNumber")
 	public String buyNumber(@ModelAttribute(ACCOUNT_PARAMS_NAME) AccountParams params, Model model) {
-		getNumbersClient().buyNumber(params.country, params.msisdn);
+		timeApiCall(Metrics.ApiClient.NUMBERS, () -> getNumbersClient().buyNumber(params.country, params.msisdn));
+		balanceCache.refresh();
+		numberReservoir.remove(params.country, params.msisdn);
+		numberInventory.bought(params.msisdn);
 		return addParamsAndReturnTemplate(params, model);
 	}
 
 	@PostMapping("cancelNumber")
 	public String cancelNumber(@ModelAttribute(ACCOUNT_PARAMS_NAME) AccountParams params, Model model) {
-		getNumbersClient().cancelNumber(params.country, params.msisdn);
+		timeApiCall(Metrics.ApiClient.NUMBERS, () -> getNumbersClient().cancelNumber(params.country, params.msisdn));
+		balanceCache.refresh();
+		numberInventory.cancelled(params.msisdn);
 		return addParamsAndReturnTemplate(params, model);
 	}
 
@@ -84,48 +135,162 @@ public class AccountController extends VonageController {
 		return result;
 	}
 
-	@PostMapping("numberInsight")
-	public String numberInsight(@ModelAttribute(ACCOUNT_PARAMS_NAME) AccountParams params, Model model) {
-		var insight = getInsightClient().getStandardNumberInsight(params.msisdn, params.country);
-		params.status = insight.getStatusMessage();
-		var currentCarrier = insight.getCurrentCarrier();
-		if (currentCarrier != null) {
-			params.currentCarrier = "Current carrier: " + formatCarrier(currentCarrier);
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	record InsightSummary(String msisdn, String country, String status, String currentCarrier,
+						  String originalCarrier, String ported, String callerType, String callerName, String error) {}
+
+	InsightSummary summariseInsight(String msisdn, String country, StandardInsightResponse insight) {
+		String currentCarrier = null, originalCarrier = null, ported = null, callerType = null, callerName = null;
+		if (insight.getCurrentCarrier() != null) {
+			currentCarrier = formatCarrier(insight.getCurrentCarrier());
 		}
-		var originalCarrier = insight.getOriginalCarrier();
-		if (originalCarrier != null) {
-			params.originalCarrier = "Original carrier: " + formatCarrier(originalCarrier);
+		if (insight.getOriginalCarrier() != null) {
+			originalCarrier = formatCarrier(insight.getOriginalCarrier());
 		}
-		var ported = insight.getPorted();
-		if (ported != null && ported != PortedStatus.UNKNOWN) {
-			params.ported = ported.name();
+		if (insight.getPorted() != null && insight.getPorted() != PortedStatus.UNKNOWN) {
+			ported = insight.getPorted().name();
 		}
-		var callerType = insight.getCallerType();
-		if (callerType != null && callerType != CallerType.UNKNOWN) {
-			params.callerType = callerType.name();
+		if (insight.getCallerType() != null && insight.getCallerType() != CallerType.UNKNOWN) {
+			callerType = insight.getCallerType().name();
 		}
-		var callerName = insight.getCallerName();
-		if (callerName != null && !callerName.isBlank()) {
-			params.callerName = callerName;
+		if (insight.getCallerName() != null && !insight.getCallerName().isBlank()) {
+			callerName = insight.getCallerName();
 		}
-		return addParamsAndReturnTemplate(params, model);
+		return new InsightSummary(msisdn, country, insight.getStatusMessage(), currentCarrier,
+				originalCarrier, ported, callerType, callerName, null
+		);
 	}
 
-	@ResponseBody
+	@PostMapping("numberInsight")
+	public CompletableFuture<String> numberInsight(@ModelAttribute(ACCOUNT_PARAMS_NAME) AccountParams params, Model model) {
+		return insightCache.get(params.msisdn, params.country).thenApply(insight -> {
+			var summary = summariseInsight(params.msisdn, params.country, insight);
+			params.status = summary.status();
+			if (summary.currentCarrier() != null) {
+				params.currentCarrier = "Current carrier: " + summary.currentCarrier();
+			}
+			if (summary.originalCarrier() != null) {
+				params.originalCarrier = "Original carrier: " + summary.originalCarrier();
+			}
+			params.ported = summary.ported();
+			params.callerType = summary.callerType();
+			params.callerName = summary.callerName();
+			return addParamsAndReturnTemplate(params, model);
+		});
+	}
+
+	/**
+	 * Looks up many numbers, given as a JSON array of {@code {"msisdn","country"}} objects, and
+	 * streams each result as a line of JSON as soon as it is available.
+	 */
+	@PostMapping(value = "/numberInsight/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<ResponseBodyEmitter> numberInsightBatchJson(InputStream body) throws IOException {
+		Iterator<InsightQuery> queries = objectMapper.readerFor(InsightQuery.class).readValues(body);
+		return numberInsightBatch(queries);
+	}
+
+	/**
+	 * As above, with one {@code msisdn[,country]} per line.
+	 */
+	@PostMapping(value = "/numberInsight/batch", consumes = "text/csv")
+	public ResponseEntity<ResponseBodyEmitter> numberInsightBatchCsv(InputStream body) {
+		var reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+		var queries = reader.lines()
+				.filter(line -> !line.isBlank() && !line.startsWith("msisdn"))
+				.map(line -> {
+					var columns = line.split(",", 2);
+					return new InsightQuery(columns[0].trim(), columns.length > 1 ? columns[1].trim() : null);
+				})
+				.iterator();
+		return numberInsightBatch(queries);
+	}
+
+	record InsightQuery(String msisdn, String country) {}
+
+	private ResponseEntity<ResponseBodyEmitter> numberInsightBatch(Iterator<InsightQuery> queries) {
+		return fanOutStreamer.stream(queries, getConfiguration().insight.parallelism(), query -> {
+			try {
+				return summariseInsight(query.msisdn(), query.country(),
+						insightCache.get(query.msisdn(), query.country()).join()
+				);
+			}
+			catch (CompletionException ex) {
+				var cause = ex.getCause() != null ? ex.getCause() : ex;
+				return new InsightSummary(query.msisdn(), query.country(),
+						null, null, null, null, null, null, cause.getMessage()
+				);
+			}
+		});
+	}
+
+	static String formatOwnedNumber(OwnedNumber n) {
+		return "{\"msisdn\":\"" + n.getMsisdn() +
+				"\",\"country\":\"" + n.getCountry() +
+				"\",\"type\":\"" + n.getType() +
+				"\",\"features\":[" + (n.getFeatures() == null || n.getFeatures().length == 0 ? "" :
+						Arrays.stream(n.getFeatures())
+								.map(f -> '"'+f+'"')
+								.collect(Collectors.joining(","))
+				) + "]}";
+	}
+
+	/**
+	 * Streams owned numbers as a JSON array, optionally filtered. Once the inventory has synced
+	 * the answer comes from its indexes; before that, or with {@code live=true}, each page is
+	 * written as soon as the Numbers API returns it. If a page fails after the array has started,
+	 * it is closed with a final {@code {"error"}} element so that the response still parses.
+	 */
 	@GetMapping("/getOwnedNumbers")
-	public String numbersInfo() {
-		return '[' + Arrays.stream(getNumbersClient().listNumbers().getNumbers())
-				.map(n ->
-						"{\"msisdn\":\"" + n.getMsisdn() +
-						"\",\"country\":\"" + n.getCountry() +
-						"\",\"type\":\"" + n.getType() +
-						"\",\"features\":[" + (n.getFeatures() == null || n.getFeatures().length == 0 ? "" :
-								Arrays.stream(n.getFeatures())
-										.map(f -> '"'+f+'"')
-										.collect(Collectors.joining(","))
-						) + "]}"
-				)
-				.collect(Collectors.joining(",")) + ']';
+	public ResponseEntity<StreamingResponseBody> numbersInfo(
+			@RequestParam(required = false) String country,
+			@RequestParam(required = false) String type,
+			@RequestParam(required = false) String feature,
+			@RequestParam(defaultValue = "false") boolean live) {
+
+		StreamingResponseBody body = out -> {
+			var first = new boolean[]{true};
+			Consumer<OwnedNumber> writeNumber = n -> {
+				try {
+					out.write(((first[0] ? "" : ",") + formatOwnedNumber(n)).getBytes(StandardCharsets.UTF_8));
+					first[0] = false;
+				}
+				catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			};
+			out.write('[');
+			if (!live && numberInventory.lastSync() != null) {
+				numberInventory.find(country, type, feature).forEach(writeNumber);
+			}
+			else {
+				try {
+					numberInventory.fetchAll(AccountRateLimiter.Priority.INTERACTIVE, page -> {
+						for (var n : page) {
+							if (NumberInventory.matches(n, country, type, feature)) {
+								writeNumber.accept(n);
+							}
+						}
+						try {
+							out.flush();
+						}
+						catch (IOException ex) {
+							throw new UncheckedIOException(ex);
+						}
+					});
+				}
+				catch (UncheckedIOException ex) {
+					throw ex.getCause();
+				}
+				catch (RuntimeException ex) {
+					var cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+					out.write(((first[0] ? "" : ",") + objectMapper.writeValueAsString(
+							Map.of("error", String.valueOf(cause.getMessage()))
+					)).getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			out.write(']');
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
 	}
 
 	@GetMapping("/account")
@@ -133,46 +298,59 @@ public class AccountController extends VonageController {
 		return addParamsAndReturnTemplate(new AccountParams(), model);
 	}
 
+	/**
+	 * Returns SMS and voice pricing from the pricing cache and a random available number from
+	 * the number reservoir, looking up anything missing concurrently.
+	 */
 	@ResponseBody
 	@GetMapping("getPricingAndNumberForCountry")
-	public String getPricingAndNumberForCountry(@RequestParam String cc) {
-		try {
-			final long pauseMillis = 600;
-			var sms = getAccountClient().getSmsPrice(cc);
-			Thread.sleep(pauseMillis);
-
-			var voice = getAccountClient().getVoicePrice(cc);
-			var smsFormatted = formatMoney(sms.getCurrency(), sms.getDefaultPrice().doubleValue());
-			var voiceFormatted = formatMoney(voice.getCurrency(), voice.getDefaultPrice().doubleValue());
-			Thread.sleep(pauseMillis);
-
-			var numbers = getNumbersClient().searchNumbers(new SearchNumbersFilter(cc)).getNumbers();
-			var number = numbers[(int) (Math.random() * numbers.length)];
-			var features = Arrays.stream(number.getFeatures())
+	public CompletableFuture<String> getPricingAndNumberForCountry(@RequestParam String cc) {
+		var pricingFuture = pricingCache.get(cc);
+		var numberFuture = numberReservoir.pick(cc);
+		return CompletableFuture.allOf(pricingFuture, numberFuture).thenApply(done -> {
+			var pricing = pricingFuture.join();
+			var smsFormatted = formatMoney(pricing.currency(), pricing.sms().doubleValue());
+			var voiceFormatted = formatMoney(pricing.currency(), pricing.voice().doubleValue());
+
+			var number = numberFuture.join();
+			if (number == null) {
+				return "{\"error\":\"No numbers available.\"}";
+			}
+			var features = number.getFeatures() == null ? "" : Arrays.stream(number.getFeatures())
 					.map(f -> '"'+f+'"').collect(Collectors.joining(","));
 
 			return "{\"sms\":\"" + smsFormatted + "\",\"voice\":\"" +
 					voiceFormatted + "\",\"msisdn\":\"" + number.getMsisdn() +
 					"\",\"type\":\"" + number.getType() + "\",\"cost\":\"" +
 					number.getCost() + "\",\"features\":[" + features + "]}";
-		}
-		catch (Exception ex) {
-			String message;
-			if (ex instanceof ArrayIndexOutOfBoundsException) {
-				message = "No numbers available.";
-			}
-			else if (ex.getCause() != null) {
-				message = ex.getCause().getMessage();
-			}
-			else {
-				message = ex.getMessage();
+		})
+		.exceptionally(ex -> {
+			var cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+			if (cause instanceof ResponseStatusException rse) {
+				throw rse;
 			}
+			var message = cause.getCause() != null ? cause.getCause().getMessage() : cause.getMessage();
 			return "{\"error\":\"" + message + "\"}";
-		}
+		});
+	}
+
+	/**
+	 * Streams the cached pricing of every country as newline-delimited JSON.
+	 */
+	@GetMapping(value = "/pricing/matrix", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> pricingMatrix() {
+		StreamingResponseBody body = out -> {
+			var writer = objectMapper.writer();
+			for (var pricing : pricingCache.snapshot()) {
+				out.write(writer.writeValueAsBytes(pricing));
+				out.write('\n');
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
 	}
 
 	public static class AccountParams {
-		private String status, balance, country, msisdn, callerName,
+		private String status, balance, balanceUpdated, country, msisdn, callerName,
 				currentCarrier, originalCarrier, ported, callerType;
 
 		public String getStatus() {
@@ -191,6 +369,14 @@ public class AccountController extends VonageController {
 			this.balance = balance;
 		}
 
+		public String getBalanceUpdated() {
+			return balanceUpdated;
+		}
+
+		public void setBalanceUpdated(String balanceUpdated) {
+			this.balanceUpdated = balanceUpdated;
+		}
+
 		public String getCountry() {
 			return country;
 		}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs Account and Numbers API calls asynchronously under one process-wide token bucket, so
+ * every request shares the account's rate limit.
+ * <p>
+ * Interactive calls reserve a token and are scheduled for when it is due, but only if that is
+ * within the configured maximum wait; beyond it they fail at once with 429 rather than queueing
+ * past the point anyone is waiting for them. Background calls (cache warm-up, syncs, refills)
+ * queue separately and only take a token when one is spare, keeping one in hand for interactive
+ * calls, so they never delay a user.
+ */
+@Component
+public class AccountRateLimiter {
+	/**
+	 * Tokens background calls leave in the bucket for interactive ones.
+	 */
+	private static final double INTERACTIVE_HEADROOM = 1;
+
+	enum Priority {
+		INTERACTIVE, BACKGROUND
+	}
+
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private Metrics metrics;
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+	private final LongAdder delayed = new LongAdder(), rejected = new LongAdder();
+	private final Queue<Runnable> background = new ConcurrentLinkedQueue<>();
+	private TokenBucket bucket;
+	private ExecutorService executor;
+	private ScheduledExecutorService pacer;
+
+	@PostConstruct
+	void init() {
+		var params = configuration.account;
+		bucket = new TokenBucket(params.ratePerSecond(), params.burst());
+		executor = Executors.newFixedThreadPool(params.workers(), task -> {
+			var thread = new Thread(task, "account-api-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		pacer = Executors.newSingleThreadScheduledExecutor(task -> {
+			var thread = new Thread(task, "account-api-background");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long intervalMillis = Math.max(10, (long) (500 / params.ratePerSecond()));
+		pacer.scheduleWithFixedDelay(this::runBackground, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		metrics.registerGauge("vonage_account_api_delayed_total", "counter",
+				"Account and Numbers API calls delayed by the shared rate limit.", delayed::sum
+		);
+		metrics.registerGauge("vonage_account_api_rejected_total", "counter",
+				"Interactive Account and Numbers API calls rejected because the wait was too long.", rejected::sum
+		);
+		metrics.registerGauge("vonage_account_api_background_queued", "gauge",
+				"Background Account and Numbers API calls waiting for a spare token.", () -> background.size()
+		);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		pacer.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Schedules an interactive call for its turn under the rate limit and times it as the given client.
+	 */
+	<T> CompletableFuture<T> submit(Metrics.ApiClient client, Supplier<T> call) {
+		return submit(Priority.INTERACTIVE, client, call);
+	}
+
+	/**
+	 * Schedules the call under the rate limit at the given priority.
+	 *
+	 * @throws ResponseStatusException With status 429, through the returned future, if an
+	 * interactive call would have to wait longer than the configured maximum.
+	 */
+	<T> CompletableFuture<T> submit(Priority priority, Metrics.ApiClient client, Supplier<T> call) {
+		Supplier<T> timed = () -> metrics.timeApiCall(client, call);
+		if (priority == Priority.BACKGROUND) {
+			var future = new CompletableFuture<T>();
+			background.add(() -> CompletableFuture.supplyAsync(timed, executor).whenComplete((value, ex) -> {
+				if (ex != null) {
+					future.completeExceptionally(ex);
+				}
+				else {
+					future.complete(value);
+				}
+			}));
+			return future;
+		}
+		long waitNanos = bucket.reserve(configuration.account.maxWait().toNanos());
+		if (waitNanos < 0) {
+			rejected.increment();
+			return CompletableFuture.failedFuture(new ResponseStatusException(
+					HttpStatus.TOO_MANY_REQUESTS, "Account API rate limit reached. Please try again shortly."
+			));
+		}
+		if (waitNanos == 0) {
+			return CompletableFuture.supplyAsync(timed, executor);
+		}
+		delayed.increment();
+		return CompletableFuture.supplyAsync(timed,
+				CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS, executor)
+		);
+	}
+
+	private void runBackground() {
+		while (!background.isEmpty() && bucket.tryAcquire(INTERACTIVE_HEADROOM)) {
+			var task = background.poll();
+			if (task == null) return;
+			task.run();
+		}
+	}
+}
@@ -22,16 +22,22 @@
 package com.vonage.sample.serversdk.springboot;
 
 import com.vonage.client.VonageClient;
+import com.vonage.client.messages.Channel;
+import com.vonage.client.messages.MessagesClient;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.ConstructorBinding;
 import org.springframework.boot.web.server.ConfigurableWebServerFactory;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.util.unit.DataSize;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -45,10 +51,21 @@ public class ApplicationConfiguration {
 			VOICE_EVENT_ENDPOINT = "/webhooks/voice/event",
 			NUMBER_VERIFICATION_REDIRECT_ENDPOINT = "/webhooks/numberVerify/redirect";
 
-	final VonageClient vonageClient;
+	final VonageClient vonageClient, sandboxVonageClient;
 	final URI serverUrl;
 	final UUID applicationId;
 	final int port;
+	final WebhookParameters webhooks;
+	final BulkParameters bulk;
+	final OutboundParameters outbound;
+	final CampaignParameters campaigns;
+	final VerifyParameters verify;
+	final AccountParameters account;
+	final PricingParameters pricing;
+	final InsightParameters insight;
+	final ReservoirParameters reservoir;
+	final SimSwapParameters simSwap;
+	final NumberVerificationParameters numberVerification;
 
 	@Bean
 	public WebServerFactoryCustomizer<ConfigurableWebServerFactory> webServerFactoryCustomizer() {
@@ -67,6 +84,18 @@ public class ApplicationConfiguration {
 
 	record ApplicationParameters(URI serverUrl, Integer port) {}
 
+	record WebhookParameters(Integer queueCapacity, Integer workers, Integer batchSize,
+							WebhookPipeline.Overflow overflow, Duration offerTimeout) {
+
+		WebhookParameters {
+			if (queueCapacity == null || queueCapacity < 1) queueCapacity = 8192;
+			if (workers == null || workers < 1) workers = 2;
+			if (batchSize == null || batchSize < 1) batchSize = 64;
+			if (overflow == null) overflow = WebhookPipeline.Overflow.BLOCK;
+			if (offerTimeout == null) offerTimeout = Duration.ofMillis(500);
+		}
+	}
+
 	private static Optional<String> getEnv(String env) {
 		return Optional.ofNullable(System.getenv(env));
 	}
@@ -75,8 +104,142 @@ public class ApplicationConfiguration {
 		return getEnv(primary).orElseGet(() -> System.getenv(fallbackEnv));
 	}
 
+	record BulkParameters(Integer parallelism, Double defaultRatePerSecond, Map<Channel, Double> ratesPerSecond,
+						  Integer maxThreads, Integer maxStreams) {
+
+		BulkParameters {
+			if (parallelism == null || parallelism < 1) parallelism = 16;
+			if (maxThreads == null || maxThreads < 1) maxThreads = 64;
+			if (maxStreams == null || maxStreams < 1) maxStreams = 16;
+			if (defaultRatePerSecond == null || defaultRatePerSecond <= 0) defaultRatePerSecond = 10.0;
+			ratesPerSecond = ratesPerSecond != null ? Map.copyOf(ratesPerSecond) : Map.of();
+		}
+
+		double ratePerSecond(Channel channel) {
+			return ratesPerSecond.getOrDefault(channel, defaultRatePerSecond);
+		}
+	}
+
+	record OutboundParameters(Path journalDirectory, DataSize segmentSize, Integer workers,
+							Integer maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+
+		OutboundParameters {
+			if (journalDirectory == null) {
+				journalDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "vonage-outbound");
+			}
+			if (segmentSize == null) segmentSize = DataSize.ofMegabytes(16);
+			if (workers == null || workers < 1) workers = 4;
+			if (maxAttempts == null || maxAttempts < 1) maxAttempts = 8;
+			if (initialBackoff == null) initialBackoff = Duration.ofSeconds(1);
+			if (maxBackoff == null) maxBackoff = Duration.ofMinutes(5);
+		}
+	}
+
+	record CampaignParameters(Integer maxConcurrentCalls, Integer maxCallsPerPrefix, Integer prefixLength,
+							Integer maxAttempts, Duration retryDelay, Duration outcomeTimeout, Duration retention) {
+
+		CampaignParameters {
+			if (maxConcurrentCalls == null || maxConcurrentCalls < 1) maxConcurrentCalls = 50;
+			if (maxCallsPerPrefix == null || maxCallsPerPrefix < 1) maxCallsPerPrefix = 10;
+			if (prefixLength == null || prefixLength < 1) prefixLength = 5;
+			if (maxAttempts == null || maxAttempts < 1) maxAttempts = 3;
+			if (retryDelay == null) retryDelay = Duration.ofSeconds(30);
+			if (outcomeTimeout == null) outcomeTimeout = Duration.ofMinutes(10);
+			if (retention == null) retention = Duration.ofHours(24);
+		}
+	}
+
+	record VerifyParameters(Duration completionTimeout, Duration completionRetention,
+							Duration throttleWindow, Integer maxPerDestination, Integer maxPerClient) {
+
+		VerifyParameters {
+			if (completionTimeout == null) completionTimeout = Duration.ofSeconds(2);
+			if (completionRetention == null) completionRetention = Duration.ofMinutes(15);
+			if (throttleWindow == null) throttleWindow = Duration.ofMinutes(10);
+			if (maxPerDestination == null || maxPerDestination < 1) maxPerDestination = 3;
+			if (maxPerClient == null || maxPerClient < 1) maxPerClient = 20;
+		}
+	}
+
+	record AccountParameters(Double ratePerSecond, Integer burst, Integer workers,
+							Duration balanceRefreshInterval, Duration inventorySyncInterval, Duration maxWait) {
+
+		AccountParameters {
+			if (ratePerSecond == null || ratePerSecond <= 0) ratePerSecond = 1.6;
+			if (burst == null || burst < 1) burst = 3;
+			if (workers == null || workers < 1) workers = 8;
+			if (balanceRefreshInterval == null) balanceRefreshInterval = Duration.ofMinutes(1);
+			if (inventorySyncInterval == null) inventorySyncInterval = Duration.ofMinutes(15);
+			if (maxWait == null) maxWait = Duration.ofSeconds(2);
+		}
+	}
+
+	record PricingParameters(Duration refreshAfter, Duration expireAfter, Duration sweepInterval, Duration warmupDelay) {
+
+		PricingParameters {
+			if (refreshAfter == null) refreshAfter = Duration.ofHours(6);
+			if (expireAfter == null) expireAfter = Duration.ofHours(24);
+			if (sweepInterval == null) sweepInterval = Duration.ofMinutes(15);
+			if (warmupDelay == null) warmupDelay = Duration.ofSeconds(30);
+		}
+	}
+
+	record ReservoirParameters(Integer batchSize, Integer lowWatermark, Duration refreshAfter,
+							   Duration emptyRetryAfter, Duration sweepInterval) {
+
+		ReservoirParameters {
+			if (batchSize == null || batchSize < 1) batchSize = 100;
+			if (lowWatermark == null || lowWatermark < 0) lowWatermark = 10;
+			if (refreshAfter == null) refreshAfter = Duration.ofMinutes(30);
+			if (emptyRetryAfter == null) emptyRetryAfter = Duration.ofMinutes(10);
+			if (sweepInterval == null) sweepInterval = Duration.ofMinutes(1);
+		}
+	}
+
+	record SimSwapParameters(Duration ttl, Integer maxEntries, Integer parallelism) {
+
+		SimSwapParameters {
+			if (ttl == null) ttl = Duration.ofMinutes(5);
+			if (maxEntries == null || maxEntries < 1) maxEntries = 100_000;
+			if (parallelism == null || parallelism < 1) parallelism = 8;
+		}
+	}
+
+	record NumberVerificationParameters(Duration ttl, Integer maxPending) {
+
+		NumberVerificationParameters {
+			if (ttl == null) ttl = Duration.ofMinutes(10);
+			if (maxPending == null || maxPending < 1) maxPending = 10_000;
+		}
+	}
+
+	record InsightParameters(Duration ttl, Integer maxEntries, Integer parallelism) {
+
+		InsightParameters {
+			if (ttl == null) ttl = Duration.ofHours(6);
+			if (maxEntries == null || maxEntries < 1) maxEntries = 50_000;
+			if (parallelism == null || parallelism < 1) parallelism = 8;
+		}
+	}
+
 	@ConstructorBinding
-	ApplicationConfiguration(VonageCredentials credentials, ApplicationParameters parameters) {
+	ApplicationConfiguration(VonageCredentials credentials, ApplicationParameters parameters,
+							WebhookParameters webhooks, BulkParameters bulk, OutboundParameters outbound,
+							CampaignParameters campaigns, VerifyParameters verify, AccountParameters account,
+							PricingParameters pricing, InsightParameters insight, ReservoirParameters reservoir,
+							SimSwapParameters simSwap, NumberVerificationParameters numberVerification) {
+		this.numberVerification = numberVerification != null ? numberVerification :
+				new NumberVerificationParameters(null, null);
+		this.simSwap = simSwap != null ? simSwap : new SimSwapParameters(null, null, null);
+		this.reservoir = reservoir != null ? reservoir : new ReservoirParameters(null, null, null, null, null);
+		this.insight = insight != null ? insight : new InsightParameters(null, null, null);
+		this.pricing = pricing != null ? pricing : new PricingParameters(null, null, null, null);
+		this.account = account != null ? account : new AccountParameters(null, null, null, null, null, null);
+		this.verify = verify != null ? verify : new VerifyParameters(null, null, null, null, null);
+		this.campaigns = campaigns != null ? campaigns : new CampaignParameters(null, null, null, null, null, null, null);
+		this.outbound = outbound != null ? outbound : new OutboundParameters(null, null, null, null, null, null);
+		this.webhooks = webhooks != null ? webhooks : new WebhookParameters(null, null, null, null, null);
+		this.bulk = bulk != null ? bulk : new BulkParameters(null, null, null, null, null);
 		this.port = parameters != null && parameters.port() != null && parameters.port() > 80 ?
 				parameters.port() : getEnv("VCR_PORT").map(Integer::parseInt).orElse(8080);
 
@@ -133,5 +296,12 @@ public class ApplicationConfiguration {
 		}
 
 		vonageClient = clientBuilder.build();
+		// Separate instance (and connection pool) whose Messages client is pinned to the sandbox.
+		sandboxVonageClient = clientBuilder.build();
+		sandboxVonageClient.getMessagesClient().useSandboxEndpoint();
+	}
+
+	MessagesClient messagesClient(boolean sandbox) {
+		return (sandbox ? sandboxVonageClient : vonageClient).getMessagesClient();
 	}
 }
@@ -35,9 +35,8 @@ public class ApplicationController extends VonageController {
 	}
 
 	@ResponseBody
-	@GetMapping("/_/metrics")
+	@GetMapping(value = "/_/metrics", produces = Metrics.CONTENT_TYPE)
 	public String metrics() {
-		// TODO implement
-		return health();
+		return getMetrics().render();
 	}
 }
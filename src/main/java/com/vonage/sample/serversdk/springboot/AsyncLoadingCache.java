@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Cache whose values are loaded asynchronously. Concurrent requests for a key that is not loaded
+ * share one load. Once a value is older than the refresh interval, the next request still gets it
+ * immediately but also starts a background reload (refresh-ahead). Requests only wait once a
+ * value has passed its expiry. A failed refresh keeps serving the previous value until it expires.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+final class AsyncLoadingCache<K, V> {
+	private final ExpiringStore<K, Entry<V>> entries;
+	private final Function<? super K, CompletableFuture<V>> loader;
+	private final long refreshNanos, expireNanos;
+	private final LongAdder loads = new LongAdder(), loadFailures = new LongAdder();
+
+	private record Entry<V>(V value, long loadedAt, CompletableFuture<V> inFlight) {}
+
+	/**
+	 * @param loader Starts loading the value for a key.
+	 * @param refreshAfter Age after which a request triggers a background reload.
+	 * @param expireAfter Age after which a value is no longer served.
+	 * @param maxSize Maximum number of keys; least recently used keys are dropped.
+	 */
+	AsyncLoadingCache(Function<? super K, CompletableFuture<V>> loader,
+					  Duration refreshAfter, Duration expireAfter, int maxSize) {
+		this.loader = loader;
+		refreshNanos = refreshAfter.toNanos();
+		expireNanos = expireAfter.toNanos();
+		entries = new ExpiringStore<>(maxSize, expireAfter);
+	}
+
+	ExpiringStore<K, ?> store() {
+		return entries;
+	}
+
+	long loadCount() {
+		return loads.sum();
+	}
+
+	long loadFailureCount() {
+		return loadFailures.sum();
+	}
+
+	/**
+	 * Returns the cached value, loading it first if it is missing or expired.
+	 */
+	CompletableFuture<V> get(K key) {
+		return lookup(key, false, false, loader);
+	}
+
+	/**
+	 * Reloads the value now unless a load is already in progress, in which case that one is returned.
+	 * The current value, if any, keeps being served until the reload completes.
+	 */
+	CompletableFuture<V> refresh(K key) {
+		return lookup(key, true, false, loader);
+	}
+
+	/**
+	 * As {@link #refresh(Object)}, loading with the given function instead of the cache's own,
+	 * for example to load at a different priority.
+	 */
+	CompletableFuture<V> refresh(K key, Function<? super K, CompletableFuture<V>> loader) {
+		return lookup(key, true, false, loader);
+	}
+
+	/**
+	 * Starts a fresh load even if one is in progress, for when the value is known to have just
+	 * changed. A load already running still completes for its own callers but no longer updates
+	 * the cache.
+	 */
+	CompletableFuture<V> reload(K key) {
+		return lookup(key, true, true, loader);
+	}
+
+	/**
+	 * Whether the key has no value yet, or one old enough to be refreshed, and no load in progress.
+	 */
+	boolean needsRefresh(K key) {
+		var due = new boolean[1];
+		entries.compute(key, (k, entry) -> {
+			due[0] = entry == null ||
+					(entry.inFlight == null && System.nanoTime() - entry.loadedAt >= refreshNanos);
+			return entry;
+		});
+		return due[0];
+	}
+
+	/**
+	 * Calls the action for every loaded, unexpired value.
+	 */
+	void forEachValue(BiConsumer<? super K, ? super V> action) {
+		long now = System.nanoTime();
+		entries.forEach((key, entry) -> {
+			if (entry.value != null && now - entry.loadedAt < expireNanos) {
+				action.accept(key, entry.value);
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<V> lookup(K key, boolean forceRefresh, boolean supersede,
+										Function<? super K, CompletableFuture<V>> loader) {
+		// [0] is the future to return, [1] the load this call started, if any.
+		var futures = new CompletableFuture<?>[2];
+		entries.compute(key, (k, entry) -> {
+			long now = System.nanoTime();
+			boolean usable = !forceRefresh && entry != null && entry.value != null && now - entry.loadedAt < expireNanos;
+			if (entry != null && entry.inFlight != null && !supersede) {
+				futures[0] = usable ? CompletableFuture.completedFuture(entry.value) : entry.inFlight;
+				return entry;
+			}
+			if (usable && now - entry.loadedAt < refreshNanos) {
+				futures[0] = CompletableFuture.completedFuture(entry.value);
+				return entry;
+			}
+			var load = new CompletableFuture<V>();
+			futures[0] = usable ? CompletableFuture.completedFuture(entry.value) : load;
+			futures[1] = load;
+			return new Entry<>(entry != null ? entry.value : null, entry != null ? entry.loadedAt : 0, load);
+		});
+		if (futures[1] != null) {
+			startLoad(key, (CompletableFuture<V>) futures[1], loader);
+		}
+		return (CompletableFuture<V>) futures[0];
+	}
+
+	private void startLoad(K key, CompletableFuture<V> load, Function<? super K, CompletableFuture<V>> loader) {
+		loads.increment();
+		CompletableFuture<V> source;
+		try {
+			source = loader.apply(key);
+		}
+		catch (RuntimeException ex) {
+			source = CompletableFuture.failedFuture(ex);
+		}
+		source.whenComplete((value, ex) -> {
+			boolean failed = ex != null || value == null;
+			entries.compute(key, (k, entry) -> {
+				if (entry == null || entry.inFlight != load) return entry;
+				if (!failed) return new Entry<>(value, System.nanoTime(), null);
+				return entry.value != null ? new Entry<>(entry.value, entry.loadedAt, null) : null;
+			});
+			if (failed) {
+				loadFailures.increment();
+				load.completeExceptionally(ex != null ? ex : new IllegalStateException("Loader returned null for "+key));
+			}
+			else {
+				load.complete(value);
+			}
+		});
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account balance refreshed in the background on a schedule and after operations that change
+ * it, so pages can show it without waiting on the Account API.
+ */
+@Component
+public class BalanceCache {
+	private static final String KEY = "balance";
+
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private AccountRateLimiter accountRateLimiter;
+
+	private AsyncLoadingCache<String, Balance> cache;
+	private ScheduledExecutorService scheduler;
+
+	record Balance(double value, Instant updatedAt) {}
+
+	@PostConstruct
+	void init() {
+		var interval = configuration.account.balanceRefreshInterval();
+		// The scheduled refresh keeps it current; the long expiry means a failed refresh keeps the last value.
+		cache = new AsyncLoadingCache<>(key -> load(AccountRateLimiter.Priority.INTERACTIVE),
+				interval, Duration.ofDays(365), 1
+		);
+		scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			var thread = new Thread(task, "balance-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> cache.refresh(KEY, key -> load(AccountRateLimiter.Priority.BACKGROUND)),
+				0, interval.toMillis(), TimeUnit.MILLISECONDS
+		);
+	}
+
+	private CompletableFuture<Balance> load(AccountRateLimiter.Priority priority) {
+		return accountRateLimiter.submit(priority, Metrics.ApiClient.ACCOUNT, () ->
+				new Balance(configuration.vonageClient.getAccountClient().getBalance().getValue(), Instant.now())
+		);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Returns the last known balance without blocking, or {@code null} if it has not loaded yet.
+	 */
+	Balance current() {
+		return cache.get(KEY).getNow(null);
+	}
+
+	/**
+	 * Starts reloading the balance straight away after an operation that changed it. This runs at
+	 * interactive priority and does not wait behind a scheduled reload that may predate the change.
+	 */
+	CompletableFuture<Balance> refresh() {
+		return cache.reload(KEY);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import com.vonage.client.voice.ncco.Action;
+import com.vonage.client.voice.ncco.Ncco;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Named call flows served by the answer webhook. Each flow's NCCO is serialised once when it is
+ * registered and split around its {@code ${name}} placeholders, so answering a call only
+ * concatenates the fixed fragments with JSON-escaped parameter values.
+ * <p>
+ * Placeholders must appear inside JSON strings, such as the text of a talk action.
+ */
+final class CallFlowRegistry {
+	private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{(\\w+)}");
+
+	private final Map<String, CompiledFlow> flows = new ConcurrentHashMap<>();
+
+	private record CompiledFlow(String[] fragments, String[] parameters, int length) {
+
+		String render(Map<String, String> values) {
+			var json = new StringBuilder(length + 64 * parameters.length);
+			for (int i = 0; i < parameters.length; i++) {
+				json.append(fragments[i]);
+				var value = values.get(parameters[i]);
+				if (value != null) {
+					appendEscaped(json, value);
+				}
+			}
+			return json.append(fragments[parameters.length]).toString();
+		}
+	}
+
+	/**
+	 * Compiles and registers a flow, replacing any existing flow with the same name.
+	 */
+	void register(String name, Action... actions) {
+		var json = new Ncco(actions).toJson();
+		var matcher = PLACEHOLDER.matcher(json);
+		var fragments = new ArrayList<String>();
+		var parameters = new ArrayList<String>();
+		int start = 0;
+		while (matcher.find()) {
+			fragments.add(json.substring(start, matcher.start()));
+			parameters.add(matcher.group(1));
+			start = matcher.end();
+		}
+		fragments.add(json.substring(start));
+		flows.put(name, new CompiledFlow(
+				fragments.toArray(String[]::new), parameters.toArray(String[]::new), json.length()
+		));
+	}
+
+	boolean contains(String name) {
+		return flows.containsKey(name);
+	}
+
+	Set<String> names() {
+		return flows.keySet();
+	}
+
+	/**
+	 * Returns the names of the parameters the flow expects, in order of appearance.
+	 */
+	List<String> parameters(String name) {
+		var flow = flows.get(name);
+		return flow != null ? List.of(flow.parameters).stream().distinct().toList() : null;
+	}
+
+	/**
+	 * Returns the flow's NCCO with placeholders replaced by the given values. Missing values
+	 * are rendered as empty strings.
+	 *
+	 * @throws IllegalArgumentException If no flow has the given name.
+	 */
+	String render(String name, Map<String, String> values) {
+		var flow = flows.get(name);
+		if (flow == null) {
+			throw new IllegalArgumentException("Unknown call flow: "+name);
+		}
+		return flow.render(values);
+	}
+
+	private static void appendEscaped(StringBuilder json, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"' -> json.append("\\\"");
+				case '\\' -> json.append("\\\\");
+				case '\n' -> json.append("\\n");
+				case '\r' -> json.append("\\r");
+				case '\t' -> json.append("\\t");
+				default -> {
+					if (c < 0x20) {
+						json.append(String.format("\\u%04x", (int) c));
+					}
+					else {
+						json.append(c);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import com.vonage.client.voice.CallStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dials a list of numbers, running each call's lifecycle (dial, wait for the outcome reported by
+ * the event webhook, retry if busy or unanswered) without holding a thread while it waits. The
+ * number of calls in progress is capped globally and per destination prefix, so one country or
+ * carrier cannot take every slot.
+ * <p>
+ * Numbers waiting for a slot are queued per prefix, and whenever a slot frees up the prefixes are
+ * visited round robin, so a long run of numbers on a busy prefix never holds back the others.
+ * Threads are only used to place calls; outcomes are awaited as futures and retries are
+ * scheduled rather than slept on. Finished campaigns are forgotten after the retention period.
+ */
+@Component
+public class CampaignScheduler {
+	static final Set<CallStatus>
+			RETRYABLE_OUTCOMES = EnumSet.of(CallStatus.BUSY, CallStatus.TIMEOUT, CallStatus.UNANSWERED),
+			FAILED_OUTCOMES = EnumSet.of(CallStatus.FAILED, CallStatus.REJECTED, CallStatus.CANCELLED);
+	private static final int MAX_TRACKED_CALLS = 100_000, DIAL_THREADS = 8;
+
+	private final Logger logger = Logger.getLogger("campaign");
+
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private Metrics metrics;
+
+	private final Map<UUID, Campaign> campaigns = new ConcurrentHashMap<>();
+	// Guarded by this; prefixes are kept in the order they are next visited.
+	private final LinkedHashMap<String, Deque<Attempt>> waiting = new LinkedHashMap<>();
+	private final Map<String, Integer> activeByPrefix = new HashMap<>();
+	private int activeTotal, waitingTotal;
+	private ExpiringStore<String, CompletableFuture<CallStatus>> outcomes;
+	private ScheduledExecutorService executor;
+	private final LongAdder activeCalls = new LongAdder();
+
+	record Progress(UUID id, int total, long queued, long active, long answered, long failed, long retries,
+					Instant startedAt, Instant finishedAt, double callsPerSecond, boolean cancelled) {}
+
+	private enum Outcome {
+		ANSWERED, RETRY, FAILED
+	}
+
+	private record Attempt(Campaign campaign, String number, String prefix, int attempt) {}
+
+	private static final class Campaign {
+		final UUID id = UUID.randomUUID();
+		final Instant startedAt = Instant.now();
+		final int total;
+		final Function<String, String> dialer;
+		final LongAdder active = new LongAdder(), answered = new LongAdder(),
+				failed = new LongAdder(), retries = new LongAdder();
+		final AtomicInteger remaining;
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		volatile Instant finishedAt;
+
+		Campaign(int total, Function<String, String> dialer) {
+			this.total = total;
+			this.dialer = dialer;
+			remaining = new AtomicInteger(total);
+		}
+
+		void finishOne() {
+			if (remaining.decrementAndGet() == 0) {
+				finishedAt = Instant.now();
+			}
+		}
+
+		Progress progress() {
+			long done = answered.sum() + failed.sum(), active = this.active.sum();
+			var end = finishedAt != null ? finishedAt : Instant.now();
+			double seconds = Math.max(Duration.between(startedAt, end).toMillis(), 1) / 1000.0;
+			return new Progress(id, total, Math.max(0, total - done - active), active, answered.sum(),
+					failed.sum(), retries.sum(), startedAt, finishedAt, done / seconds, cancelled.get()
+			);
+		}
+	}
+
+	@PostConstruct
+	void init() {
+		var params = configuration.campaigns;
+		outcomes = new ExpiringStore<>(MAX_TRACKED_CALLS, params.outcomeTimeout().plusMinutes(1));
+		var threadCount = new AtomicInteger();
+		executor = Executors.newScheduledThreadPool(DIAL_THREADS, task -> {
+			var thread = new Thread(task, "campaign-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::expireFinished, 1, 1, TimeUnit.MINUTES);
+		metrics.registerGauge("vonage_campaign_calls_active", "gauge",
+				"Campaign calls dialled and awaiting an outcome.", activeCalls::sum
+		);
+		metrics.registerGauge("vonage_campaign_calls_waiting", "gauge",
+				"Campaign calls waiting for a free call slot.", this::waitingCount
+		);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private synchronized long waitingCount() {
+		return waitingTotal;
+	}
+
+	/**
+	 * Starts dialling the given numbers in the background.
+	 *
+	 * @param dialer Places a call to the number and returns the call's UUID.
+	 */
+	Progress start(Collection<String> numbers, Function<String, String> dialer) {
+		var campaign = new Campaign(numbers.size(), dialer);
+		campaigns.put(campaign.id, campaign);
+		if (numbers.isEmpty()) {
+			campaign.finishedAt = campaign.startedAt;
+		}
+		synchronized (this) {
+			for (var number : numbers) {
+				queue(new Attempt(campaign, number, prefixOf(number), 1));
+			}
+		}
+		dispatch();
+		return campaign.progress();
+	}
+
+	Progress progress(UUID id) {
+		var campaign = campaigns.get(id);
+		return campaign != null ? campaign.progress() : null;
+	}
+
+	List<Progress> list() {
+		return campaigns.values().stream().map(Campaign::progress).toList();
+	}
+
+	/**
+	 * Stops dialling numbers not yet called. Calls in progress are left to finish.
+	 */
+	Progress cancel(UUID id) {
+		var campaign = campaigns.get(id);
+		if (campaign == null) return null;
+		campaign.cancelled.set(true);
+		var dropped = new ArrayList<Attempt>();
+		synchronized (this) {
+			for (var prefixes = waiting.values().iterator(); prefixes.hasNext(); ) {
+				var queue = prefixes.next();
+				queue.removeIf(attempt -> attempt.campaign == campaign && dropped.add(attempt));
+				if (queue.isEmpty()) {
+					prefixes.remove();
+				}
+			}
+			waitingTotal -= dropped.size();
+		}
+		for (var attempt : dropped) {
+			finish(attempt, Outcome.FAILED);
+		}
+		return campaign.progress();
+	}
+
+	/**
+	 * Records a call status reported by the event webhook. Only final statuses matter here.
+	 */
+	void callEvent(String callId, CallStatus status) {
+		if (callId == null || status == null || !isFinal(status)) return;
+		outcomes.compute(callId, (k, existing) -> {
+			var outcome = existing != null ? existing : new CompletableFuture<CallStatus>();
+			outcome.complete(status);
+			return outcome;
+		});
+	}
+
+	private static boolean isFinal(CallStatus status) {
+		return status == CallStatus.COMPLETED || RETRYABLE_OUTCOMES.contains(status) || FAILED_OUTCOMES.contains(status);
+	}
+
+	private String prefixOf(String number) {
+		var digits = number.replaceAll("\\D", "");
+		return digits.substring(0, Math.min(digits.length(), configuration.campaigns.prefixLength()));
+	}
+
+	private void queue(Attempt attempt) {
+		waiting.computeIfAbsent(attempt.prefix, p -> new ArrayDeque<>()).addLast(attempt);
+		waitingTotal++;
+	}
+
+	/**
+	 * Starts as many waiting attempts as there are free slots, taking one prefix at a time.
+	 */
+	private void dispatch() {
+		var ready = new ArrayList<Attempt>();
+		synchronized (this) {
+			var params = configuration.campaigns;
+			boolean progressed = true;
+			while (progressed && activeTotal < params.maxConcurrentCalls() && !waiting.isEmpty()) {
+				progressed = false;
+				for (var prefix : new ArrayList<>(waiting.keySet())) {
+					if (activeTotal >= params.maxConcurrentCalls()) break;
+					if (activeByPrefix.getOrDefault(prefix, 0) >= params.maxCallsPerPrefix()) continue;
+					var queue = waiting.remove(prefix);
+					ready.add(queue.removeFirst());
+					waitingTotal--;
+					activeTotal++;
+					activeByPrefix.merge(prefix, 1, Integer::sum);
+					if (!queue.isEmpty()) {
+						// Re-inserting moves the prefix to the back of the visiting order.
+						waiting.put(prefix, queue);
+					}
+					progressed = true;
+				}
+			}
+		}
+		for (var attempt : ready) {
+			executor.execute(() -> dial(attempt));
+		}
+	}
+
+	private synchronized void release(String prefix) {
+		activeTotal--;
+		activeByPrefix.computeIfPresent(prefix, (p, count) -> count > 1 ? count - 1 : null);
+	}
+
+	/**
+	 * Places one call while holding a slot for its prefix and a global slot, then waits for its
+	 * outcome without blocking.
+	 */
+	private void dial(Attempt attempt) {
+		var campaign = attempt.campaign;
+		if (campaign.cancelled.get()) {
+			release(attempt.prefix);
+			finish(attempt, Outcome.FAILED);
+			dispatch();
+			return;
+		}
+		campaign.active.increment();
+		activeCalls.increment();
+		String callId;
+		try {
+			callId = campaign.dialer.apply(attempt.number);
+		}
+		catch (RuntimeException ex) {
+			logger.log(Level.WARNING, "Could not call "+attempt.number+" for campaign "+campaign.id, ex);
+			completeCall(attempt, OutboundJobQueue.isRetryable(ex) ? Outcome.RETRY : Outcome.FAILED);
+			return;
+		}
+		var outcome = outcomes.compute(callId, (k, existing) ->
+				existing != null ? existing : new CompletableFuture<>()
+		);
+		outcome.copy().orTimeout(configuration.campaigns.outcomeTimeout().toMillis(), TimeUnit.MILLISECONDS)
+				.whenCompleteAsync((status, ex) -> {
+					outcomes.remove(callId);
+					if (ex != null) {
+						if (ex instanceof TimeoutException) {
+							logger.warning("No outcome for call "+callId+" to "+attempt.number);
+						}
+						completeCall(attempt, Outcome.FAILED);
+					}
+					else if (status == CallStatus.COMPLETED) {
+						completeCall(attempt, Outcome.ANSWERED);
+					}
+					else {
+						completeCall(attempt, RETRYABLE_OUTCOMES.contains(status) ? Outcome.RETRY : Outcome.FAILED);
+					}
+				}, executor);
+	}
+
+	private void completeCall(Attempt attempt, Outcome outcome) {
+		attempt.campaign.active.decrement();
+		activeCalls.decrement();
+		release(attempt.prefix);
+		var params = configuration.campaigns;
+		if (outcome == Outcome.RETRY && attempt.attempt < params.maxAttempts() && !attempt.campaign.cancelled.get()) {
+			attempt.campaign.retries.increment();
+			var next = new Attempt(attempt.campaign, attempt.number, attempt.prefix, attempt.attempt + 1);
+			executor.schedule(() -> retry(next), params.retryDelay().toMillis(), TimeUnit.MILLISECONDS);
+		}
+		else {
+			finish(attempt, outcome == Outcome.ANSWERED ? Outcome.ANSWERED : Outcome.FAILED);
+		}
+		dispatch();
+	}
+
+	private void retry(Attempt attempt) {
+		if (attempt.campaign.cancelled.get()) {
+			finish(attempt, Outcome.FAILED);
+			return;
+		}
+		synchronized (this) {
+			queue(attempt);
+		}
+		dispatch();
+	}
+
+	private static void finish(Attempt attempt, Outcome outcome) {
+		(outcome == Outcome.ANSWERED ? attempt.campaign.answered : attempt.campaign.failed).increment();
+		attempt.campaign.finishOne();
+	}
+
+	private void expireFinished() {
+		var cutoff = Instant.now().minus(configuration.campaigns.retention());
+		campaigns.values().removeIf(campaign -> campaign.finishedAt != null && campaign.finishedAt.isBefore(cutoff));
+	}
+}
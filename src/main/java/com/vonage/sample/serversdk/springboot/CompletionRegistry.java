@@ -0,0 +1,74 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One completion handle per key, created by whichever side gets there first: the request that
+ * waits for the result or the callback that delivers it. Unlike {@link LongPollHub}, a result is
+ * not consumed by reading it; every waiter, current or later, sees the same outcome until the
+ * handle expires.
+ *
+ * @param <K> The key type, usually a request ID.
+ * @param <V> The outcome type.
+ */
+final class CompletionRegistry<K, V> {
+	static final int DEFAULT_MAX_SIZE = 10_000;
+
+	private final ExpiringStore<K, CompletableFuture<V>> handles;
+
+	CompletionRegistry(Duration retention) {
+		this(DEFAULT_MAX_SIZE, retention);
+	}
+
+	CompletionRegistry(int maxSize, Duration retention) {
+		handles = new ExpiringStore<>(maxSize, retention);
+	}
+
+	ExpiringStore<K, ?> store() {
+		return handles;
+	}
+
+	private CompletableFuture<V> handle(K key) {
+		return handles.compute(key, (k, existing) -> existing != null ? existing : new CompletableFuture<>());
+	}
+
+	/**
+	 * Records the outcome for the key. Only the first outcome counts.
+	 *
+	 * @return {@code true} if this call set the outcome.
+	 */
+	boolean complete(K key, V outcome) {
+		return handle(key).complete(outcome);
+	}
+
+	/**
+	 * Returns a future for the key's outcome that completes with {@code null} if there is none
+	 * within the timeout. Timing out does not affect other waiters.
+	 */
+	CompletableFuture<V> await(K key, Duration timeout) {
+		return handle(key).copy().completeOnTimeout(null, timeout.toMillis(), TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the most recent events for each key in a small ring, numbered consecutively in arrival
+ * order. Readers pass the last sequence number they have seen and get every retained event after
+ * it, waiting for the next one if they are up to date. A reader that falls more than the ring's
+ * capacity behind sees a gap in the sequence numbers rather than stale events.
+ * <p>
+ * A key's timeline expires once it has had no events for the TTL. If it is later recreated, its
+ * numbering starts above every sequence number issued before, so a cursor from the old timeline
+ * is simply behind and its reader gets the new events rather than missing or repeating any. A
+ * cursor ahead of the timeline, for example from before a restart, is treated the same way.
+ * Reading a key with no events yet does not create a timeline, so lookups of unknown keys
+ * cannot evict live ones; their readers are parked separately until the first event.
+ *
+ * @param <K> The key type, usually a call ID.
+ * @param <V> The event type.
+ */
+final class EventTimeline<K, V> {
+	static final int DEFAULT_MAX_KEYS = 10_000, DEFAULT_EVENTS_PER_KEY = 32;
+	static final Duration DEFAULT_TTL = Duration.ofHours(1);
+
+	private final ExpiringStore<K, Timeline<V>> timelines;
+	private final ExpiringStore<K, List<Reader<V>>> waiting;
+	private final int eventsPerKey;
+	private final LongAdder readers = new LongAdder();
+	// Seeded from the clock so numbering keeps moving forward across restarts in practice.
+	private final AtomicLong highestSequence = new AtomicLong(System.currentTimeMillis());
+
+	record Event<V>(long sequence, V value) {}
+
+	private record Reader<V>(long after, CompletableFuture<List<Event<V>>> future) {}
+
+	private static final class Timeline<V> {
+		final Object[] ring;
+		final List<Reader<V>> readers = new ArrayList<>(1);
+		final long firstSequence;
+		long nextSequence;
+
+		Timeline(int capacity, long firstSequence) {
+			ring = new Object[capacity];
+			this.firstSequence = nextSequence = firstSequence;
+		}
+
+		@SuppressWarnings("unchecked")
+		List<Event<V>> after(long cursor) {
+			if (cursor >= nextSequence) {
+				cursor = firstSequence - 1;
+			}
+			long oldest = Math.max(firstSequence, nextSequence - ring.length);
+			long from = Math.max(cursor + 1, oldest);
+			if (from >= nextSequence) return List.of();
+			var events = new ArrayList<Event<V>>((int) (nextSequence - from));
+			for (long seq = from; seq < nextSequence; seq++) {
+				events.add((Event<V>) ring[(int) (seq % ring.length)]);
+			}
+			return events;
+		}
+	}
+
+	EventTimeline() {
+		this(DEFAULT_MAX_KEYS, DEFAULT_EVENTS_PER_KEY, DEFAULT_TTL);
+	}
+
+	EventTimeline(int maxKeys, int eventsPerKey, Duration ttl) {
+		timelines = new ExpiringStore<>(maxKeys, ttl);
+		waiting = new ExpiringStore<>(maxKeys, ttl);
+		this.eventsPerKey = eventsPerKey;
+	}
+
+	ExpiringStore<K, ?> store() {
+		return timelines;
+	}
+
+	long readerCount() {
+		return readers.sum();
+	}
+
+	/**
+	 * Appends the event, restarts the key's expiry and wakes every reader waiting on the key.
+	 *
+	 * @return The event's sequence number.
+	 */
+	long append(K key, V value) {
+		var woken = new ArrayList<Reader<V>>(1);
+		var pages = new ArrayList<List<Event<V>>>(1);
+		var sequence = new long[1];
+		timelines.compute(key, (k, existing) -> {
+			var t = existing;
+			if (t == null) {
+				t = new Timeline<>(eventsPerKey, highestSequence.incrementAndGet());
+				// Lock order is always timeline then waiting, so parked readers cannot be missed.
+				var parked = waiting.remove(key);
+				if (parked != null) {
+					t.readers.addAll(parked);
+				}
+			}
+			long seq = sequence[0] = t.nextSequence++;
+			highestSequence.accumulateAndGet(seq, Math::max);
+			t.ring[(int) (seq % t.ring.length)] = new Event<>(seq, value);
+			var it = t.readers.iterator();
+			while (it.hasNext()) {
+				var reader = it.next();
+				var page = t.after(reader.after);
+				if (!page.isEmpty()) {
+					it.remove();
+					woken.add(reader);
+					pages.add(page);
+				}
+			}
+			return t;
+		}, true);
+		for (int i = 0; i < woken.size(); i++) {
+			woken.get(i).future.complete(pages.get(i));
+		}
+		return sequence[0];
+	}
+
+	/**
+	 * Returns the retained events after the given sequence number, waiting up to the timeout for
+	 * the next one if there are none yet. Completes with an empty list on timeout.
+	 */
+	CompletableFuture<List<Event<V>>> read(K key, long after, long timeoutMillis) {
+		var future = new CompletableFuture<List<Event<V>>>();
+		var reader = new Reader<>(after, future);
+		timelines.compute(key, (k, t) -> {
+			if (t == null) {
+				waiting.compute(key, (wk, parked) -> {
+					var list = parked != null ? parked : new ArrayList<Reader<V>>(1);
+					list.add(reader);
+					return list;
+				});
+				return null;
+			}
+			var events = t.after(after);
+			if (events.isEmpty()) {
+				t.readers.add(reader);
+			}
+			else {
+				future.complete(events);
+			}
+			return t;
+		});
+		if (!future.isDone()) {
+			readers.increment();
+			future.completeOnTimeout(List.of(), Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS)
+					.whenComplete((events, ex) -> {
+						readers.decrement();
+						if (events == null || events.isEmpty()) {
+							timelines.compute(key, (k, t) -> {
+								if (t != null) {
+									t.readers.remove(reader);
+								}
+								else {
+									waiting.compute(key, (wk, parked) -> {
+										if (parked == null) return null;
+										parked.remove(reader);
+										return parked.isEmpty() ? null : parked;
+									});
+								}
+								return t;
+							});
+						}
+					});
+		}
+		return future;
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Size-bounded map whose entries expire a fixed time after they were last written. Keys are
+ * spread over independently locked segments, each evicting its least recently used entry
+ * once full, so writers for different keys rarely contend.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+final class ExpiringStore<K, V> {
+	private final Segment<K, V>[] segments;
+	private final long ttlNanos;
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(),
+			evictions = new LongAdder(), expirations = new LongAdder();
+
+	private record Entry<V>(V value, long expiresAt) {}
+
+	private static final class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		private final long sweepIntervalNanos;
+		private final LongAdder evictions, expirations;
+		private long nextSweep;
+
+		Segment(int capacity, long sweepIntervalNanos, LongAdder evictions, LongAdder expirations) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.sweepIntervalNanos = sweepIntervalNanos;
+			this.evictions = evictions;
+			this.expirations = expirations;
+			nextSweep = System.nanoTime();
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+			if (size() <= capacity) return false;
+			(isExpired(eldest.getValue(), System.nanoTime()) ? expirations : evictions).increment();
+			return true;
+		}
+
+		void sweepIfDue(long now) {
+			if (now - nextSweep < 0) return;
+			nextSweep = now + sweepIntervalNanos;
+			var it = values().iterator();
+			while (it.hasNext()) {
+				if (isExpired(it.next(), now)) {
+					it.remove();
+					expirations.increment();
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	ExpiringStore(int maxSize, Duration ttl) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be positive.");
+		}
+		ttlNanos = ttl.toNanos();
+		long sweepIntervalNanos = Math.max(ttlNanos / 4, Duration.ofSeconds(1).toNanos());
+		int stripes = Integer.highestOneBit(Math.min(maxSize, Runtime.getRuntime().availableProcessors() * 4));
+		segments = (Segment<K, V>[]) new Segment<?, ?>[Math.max(stripes, 1)];
+		int capacity = (maxSize + segments.length - 1) / segments.length;
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment<>(capacity, sweepIntervalNanos, evictions, expirations);
+		}
+	}
+
+	private static boolean isExpired(Entry<?> entry, long now) {
+		return entry.expiresAt - now <= 0;
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+	}
+
+	private V liveValue(Segment<K, V> segment, Object key, long now) {
+		var entry = segment.get(key);
+		if (entry == null) return null;
+		if (isExpired(entry, now)) {
+			segment.remove(key);
+			expirations.increment();
+			return null;
+		}
+		return entry.value;
+	}
+
+	private V record(V value) {
+		(value != null ? hits : misses).increment();
+		return value;
+	}
+
+	V get(K key) {
+		var segment = segmentFor(key);
+		synchronized (segment) {
+			return record(liveValue(segment, key, System.nanoTime()));
+		}
+	}
+
+	void put(K key, V value) {
+		var segment = segmentFor(key);
+		synchronized (segment) {
+			long now = System.nanoTime();
+			segment.put(key, new Entry<>(value, now + ttlNanos));
+			segment.sweepIfDue(now);
+		}
+	}
+
+	V remove(K key) {
+		var segment = segmentFor(key);
+		synchronized (segment) {
+			var value = record(liveValue(segment, key, System.nanoTime()));
+			if (value != null) {
+				segment.remove(key);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Atomically replaces the live value for the key with the function's result, removing the
+	 * entry if it returns {@code null}. Returning the same instance keeps the original expiry.
+	 */
+	V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+		return compute(key, remapping, false);
+	}
+
+	/**
+	 * As {@link #compute(Object, BiFunction)}, optionally restarting the expiry even when the
+	 * function returns the same instance, for values that are updated in place.
+	 */
+	V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping, boolean touch) {
+		var segment = segmentFor(key);
+		synchronized (segment) {
+			long now = System.nanoTime();
+			V existing = record(liveValue(segment, key, now)), updated = remapping.apply(key, existing);
+			if (updated == null) {
+				if (existing != null) {
+					segment.remove(key);
+				}
+			}
+			else if (updated != existing || touch) {
+				segment.put(key, new Entry<>(updated, now + ttlNanos));
+			}
+			segment.sweepIfDue(now);
+			return updated;
+		}
+	}
+
+	/**
+	 * Calls the action for every live entry, one segment at a time. The action runs while the
+	 * segment is locked, so it must be quick and must not touch the store.
+	 */
+	void forEach(BiConsumer<? super K, ? super V> action) {
+		for (var segment : segments) {
+			synchronized (segment) {
+				long now = System.nanoTime();
+				segment.forEach((key, entry) -> {
+					if (!isExpired(entry, now)) {
+						action.accept(key, entry.value);
+					}
+				});
+			}
+		}
+	}
+
+	int size() {
+		int size = 0;
+		for (var segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	long hitCount() {
+		return hits.sum();
+	}
+
+	long missCount() {
+		return misses.sum();
+	}
+
+	long evictionCount() {
+		return evictions.sum();
+	}
+
+	long expirationCount() {
+		return expirations.sum();
+	}
+}
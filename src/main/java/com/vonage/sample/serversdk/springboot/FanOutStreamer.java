@@ -0,0 +1,168 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a task per input with bounded parallelism and streams each result back to the client
+ * as a line of JSON as soon as it completes. Inputs are pulled lazily, so request bodies can be
+ * consumed while earlier items are still being processed. Tasks from every stream share one
+ * fixed pool, and streams beyond the concurrent limit wait for a reader thread, so the thread
+ * count stays bounded however many batches are submitted at once. A rate-limited task is
+ * scheduled for when its permit is due rather than sleeping on a pool thread.
+ */
+@Component
+public class FanOutStreamer {
+	private final Logger logger = Logger.getLogger("fanout");
+	private static final Duration TIMEOUT = Duration.ofHours(1);
+
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private final AtomicInteger threadCount = new AtomicInteger(), readerCount = new AtomicInteger();
+	private ScheduledExecutorService executor;
+	private ExecutorService readers;
+
+	@PostConstruct
+	void init() {
+		var params = configuration.bulk;
+		executor = Executors.newScheduledThreadPool(params.maxThreads(), task -> {
+			var thread = new Thread(task, "fanout-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		readers = Executors.newFixedThreadPool(params.maxStreams(), task -> {
+			var thread = new Thread(task, "fanout-reader-" + readerCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	void shutdown() {
+		readers.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Applies the task to every input, at most {@code parallelism} at a time, writing each
+	 * result as newline-delimited JSON. A task that throws yields an {@code error} line for its input.
+	 */
+	<I> ResponseEntity<ResponseBodyEmitter> stream(Iterator<I> inputs, int parallelism, Function<? super I, ?> task) {
+		return stream(inputs, parallelism, null, task);
+	}
+
+	/**
+	 * As above, starting each task only once the limiter has a permit for it, if a limiter is given.
+	 */
+	<I> ResponseEntity<ResponseBodyEmitter> stream(Iterator<I> inputs, int parallelism, TokenBucket limiter,
+												   Function<? super I, ?> task) {
+		var emitter = new ResponseBodyEmitter(TIMEOUT.toMillis());
+		var permits = new Semaphore(parallelism);
+		readers.execute(() -> {
+			try {
+				while (inputs.hasNext()) {
+					var input = inputs.next();
+					permits.acquire();
+					long waitNanos = limiter != null ? limiter.reserve() : 0;
+					executor.schedule(() -> {
+						try {
+							emit(emitter, run(task, input));
+						}
+						finally {
+							permits.release();
+						}
+					}, waitNanos, TimeUnit.NANOSECONDS);
+				}
+				permits.acquire(parallelism);
+				emitter.complete();
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				emitter.completeWithError(ie);
+			}
+			catch (RuntimeException ex) {
+				// Malformed input: report what we can and let in-flight tasks finish writing.
+				emit(emitter, error("input", null, ex));
+				permits.acquireUninterruptibly(parallelism);
+				emitter.complete();
+			}
+		});
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+	}
+
+	private static <I> Object run(Function<? super I, ?> task, I input) {
+		try {
+			return task.apply(input);
+		}
+		catch (RuntimeException ex) {
+			return error("input", input, ex);
+		}
+	}
+
+	private static Object error(String key, Object input, Exception ex) {
+		var result = new LinkedHashMap<String, Object>();
+		if (input != null) {
+			result.put(key, input.toString());
+		}
+		result.put("error", ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName());
+		return result;
+	}
+
+	private void emit(ResponseBodyEmitter emitter, Object result) {
+		try {
+			emitter.send(objectMapper.writeValueAsString(result) + '\n', MediaType.TEXT_PLAIN);
+		}
+		catch (JsonProcessingException ex) {
+			logger.log(Level.WARNING, "Could not serialise "+result, ex);
+		}
+		catch (IOException | IllegalStateException ex) {
+			// Client went away; remaining results are discarded.
+			logger.fine("Dropping result: "+ex.getMessage());
+		}
+	}
+}
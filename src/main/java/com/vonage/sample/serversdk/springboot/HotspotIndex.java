@@ -0,0 +1,188 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clusters coordinate reports into fixed-size grid cells as they arrive. Each cell keeps
+ * per-minute counts and coordinate sums for the retention period, so the densest cells over any
+ * recent window can be found by scanning active cells once, without touching individual reports.
+ * The number of cells is capped; when a report needs a new cell and the cap is reached, the
+ * least recently updated cell is dropped to make room.
+ */
+final class HotspotIndex {
+	private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private final Map<Long, Cell> cells = new ConcurrentHashMap<>();
+	private final AtomicLong nextSweep = new AtomicLong();
+	private final double cellDegrees;
+	private final int retentionMinutes, maxCells;
+
+	record Hotspot(double latitude, double longitude, long reports, Instant lastReport) {}
+
+	private static final class Cell {
+		final long[] minutes, counts;
+		final double[] latitudeSums, longitudeSums;
+		long lastReportMillis;
+
+		Cell(int retentionMinutes) {
+			minutes = new long[retentionMinutes];
+			counts = new long[retentionMinutes];
+			latitudeSums = new double[retentionMinutes];
+			longitudeSums = new double[retentionMinutes];
+		}
+
+		synchronized void add(double latitude, double longitude, long nowMillis) {
+			long minute = nowMillis / MINUTE_MILLIS;
+			int slot = (int) (minute % minutes.length);
+			if (minutes[slot] != minute) {
+				minutes[slot] = minute;
+				counts[slot] = 0;
+				latitudeSums[slot] = 0;
+				longitudeSums[slot] = 0;
+			}
+			counts[slot]++;
+			latitudeSums[slot] += latitude;
+			longitudeSums[slot] += longitude;
+			lastReportMillis = Math.max(lastReportMillis, nowMillis);
+		}
+
+		synchronized Hotspot summarise(long fromMinute) {
+			long count = 0;
+			double latitude = 0, longitude = 0;
+			for (int i = 0; i < minutes.length; i++) {
+				if (minutes[i] >= fromMinute && counts[i] > 0) {
+					count += counts[i];
+					latitude += latitudeSums[i];
+					longitude += longitudeSums[i];
+				}
+			}
+			if (count == 0) return null;
+			return new Hotspot(latitude / count, longitude / count, count, Instant.ofEpochMilli(lastReportMillis));
+		}
+
+		synchronized boolean isIdleSince(long millis) {
+			return lastReportMillis < millis;
+		}
+
+		synchronized long lastReportMillis() {
+			return lastReportMillis;
+		}
+	}
+
+	/**
+	 * @param cellDegrees Side of a grid cell in degrees; 0.01 is roughly one kilometre at the equator.
+	 * @param retention The longest window that can be queried. Idle cells are dropped after this.
+	 * @param maxCells The most cells to keep.
+	 */
+	HotspotIndex(double cellDegrees, Duration retention, int maxCells) {
+		this.cellDegrees = cellDegrees;
+		this.retentionMinutes = (int) Math.max(retention.toMinutes(), 1);
+		this.maxCells = Math.max(maxCells, 1);
+	}
+
+	private long cellKey(double latitude, double longitude) {
+		long row = (long) Math.floor((latitude + 90) / cellDegrees);
+		long column = (long) Math.floor((longitude + 180) / cellDegrees);
+		return (row << 32) | (column & 0xffffffffL);
+	}
+
+	void add(double latitude, double longitude) {
+		// Written so that NaN fails the check too.
+		if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+			throw new IllegalArgumentException("Coordinate out of range: "+latitude+","+longitude);
+		}
+		long now = System.currentTimeMillis(), key = cellKey(latitude, longitude);
+		if (cells.size() >= maxCells && !cells.containsKey(key)) {
+			evictOldest();
+		}
+		// Adding inside compute means a sweep can't drop the cell between lookup and add.
+		cells.compute(key, (k, cell) -> {
+			if (cell == null) {
+				cell = new Cell(retentionMinutes);
+			}
+			cell.add(latitude, longitude, now);
+			return cell;
+		});
+		sweepIfDue(now);
+	}
+
+	/**
+	 * Returns up to {@code limit} cells with the most reports in the given window, densest first.
+	 * Each hotspot is positioned at the centroid of the reports counted for it.
+	 */
+	List<Hotspot> top(int limit, Duration window) {
+		if (limit < 1) return List.of();
+		long minutes = Math.min(Math.max(window.toMinutes(), 1), retentionMinutes);
+		long fromMinute = System.currentTimeMillis() / MINUTE_MILLIS - minutes + 1;
+		var heap = new PriorityQueue<Hotspot>(limit + 1, Comparator.comparingLong(Hotspot::reports));
+		for (var cell : cells.values()) {
+			var hotspot = cell.summarise(fromMinute);
+			if (hotspot != null) {
+				heap.add(hotspot);
+				if (heap.size() > limit) {
+					heap.poll();
+				}
+			}
+		}
+		var result = new ArrayList<>(heap);
+		result.sort(Comparator.comparingLong(Hotspot::reports).reversed());
+		return result;
+	}
+
+	int cellCount() {
+		return cells.size();
+	}
+
+	private void sweepIfDue(long now) {
+		long due = nextSweep.get();
+		if (now < due || !nextSweep.compareAndSet(due, now + MINUTE_MILLIS)) return;
+		long idleSince = now - retentionMinutes * MINUTE_MILLIS;
+		for (var key : cells.keySet()) {
+			cells.computeIfPresent(key, (k, cell) -> cell.isIdleSince(idleSince) ? null : cell);
+		}
+	}
+
+	private void evictOldest() {
+		long oldestKey = 0, oldestMillis = Long.MAX_VALUE;
+		for (var entry : cells.entrySet()) {
+			long lastReport = entry.getValue().lastReportMillis();
+			if (lastReport < oldestMillis) {
+				oldestKey = entry.getKey();
+				oldestMillis = lastReport;
+			}
+		}
+		if (oldestMillis == Long.MAX_VALUE) return;
+		long idleSince = oldestMillis + 1;
+		cells.computeIfPresent(oldestKey, (k, cell) -> cell.isIdleSince(idleSince) ? null : cell);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import com.vonage.client.insight.StandardInsightResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Standard Number Insight results cached by number and country. Carrier and porting data change
+ * rarely, so results are kept for a fixed time, and concurrent lookups of the same number share
+ * one API call.
+ */
+@Component
+public class InsightCache {
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private Metrics metrics;
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+	private AsyncLoadingCache<Key, StandardInsightResponse> cache;
+	private ExecutorService executor;
+
+	private record Key(String msisdn, String country) {}
+
+	@PostConstruct
+	void init() {
+		var params = configuration.insight;
+		executor = Executors.newFixedThreadPool(params.parallelism(), task -> {
+			var thread = new Thread(task, "insight-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		cache = new AsyncLoadingCache<>(key -> CompletableFuture.supplyAsync(() ->
+				metrics.timeApiCall(Metrics.ApiClient.INSIGHT, () -> configuration.vonageClient
+						.getInsightClient().getStandardNumberInsight(key.msisdn(), key.country())
+				), executor
+		), params.ttl(), params.ttl(), params.maxEntries());
+		metrics.registerGauge("vonage_insight_cached", "gauge",
+				"Number Insight results held in the cache.", () -> cache.store().size()
+		);
+		metrics.registerGauge("vonage_insight_loads_total", "counter",
+				"Number Insight API calls made to fill the cache.", cache::loadCount
+		);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	CompletableFuture<StandardInsightResponse> get(String msisdn, String country) {
+		var normalisedCountry = country == null || country.isBlank() ? null : country.trim().toUpperCase(Locale.ROOT);
+		return cache.get(new Key(msisdn.replaceAll("\\D", ""), normalisedCountry));
+	}
+}
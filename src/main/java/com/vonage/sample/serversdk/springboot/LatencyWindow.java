@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.util.Arrays;
+
+/**
+ * Fixed window of the most recent latency samples, so percentiles follow current conditions
+ * while the count and mean cover everything recorded.
+ */
+final class LatencyWindow {
+	private final long[] samplesNanos;
+	private long count, totalNanos;
+
+	record Summary(long completed, double meanSeconds, double p50Seconds, double p95Seconds, double maxSeconds) {}
+
+	LatencyWindow(int samples) {
+		samplesNanos = new long[samples];
+	}
+
+	synchronized void record(long nanos) {
+		samplesNanos[(int) (count++ % samplesNanos.length)] = nanos;
+		totalNanos += nanos;
+	}
+
+	synchronized Summary summarise() {
+		if (count == 0) return new Summary(0, 0, 0, 0, 0);
+		var sorted = Arrays.copyOf(samplesNanos, (int) Math.min(count, samplesNanos.length));
+		Arrays.sort(sorted);
+		return new Summary(count, totalNanos / 1e9 / count,
+				percentile(sorted, 0.5), percentile(sorted, 0.95), sorted[sorted.length - 1] / 1e9
+		);
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e9;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands out per-key waiters for long-poll endpoints. A published value completes only the
+ * waiters registered for its key, or is held until the next {@link #await(Object, long)} for it.
+ * Held values nobody asks for are dropped once they expire or the hub reaches its size limit.
+ *
+ * @param <K> The key type, usually a message, call or request ID.
+ * @param <V> The webhook payload type.
+ */
+final class LongPollHub<K, V> {
+	static final int DEFAULT_MAX_SIZE = 10_000;
+	static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+	private final ExpiringStore<K, Slot<V>> slots;
+	private final LongAdder waiters = new LongAdder();
+
+	private static final class Slot<V> {
+		final List<CompletableFuture<V>> waiters = new ArrayList<>(1);
+		V pending;
+	}
+
+	LongPollHub() {
+		this(DEFAULT_MAX_SIZE, DEFAULT_TTL);
+	}
+
+	LongPollHub(int maxSize, Duration ttl) {
+		slots = new ExpiringStore<>(maxSize, ttl);
+	}
+
+	ExpiringStore<K, ?> store() {
+		return slots;
+	}
+
+	long waiterCount() {
+		return waiters.sum();
+	}
+
+	/**
+	 * Returns a future that completes with the value for the given key, or {@code null} if none
+	 * arrives before the timeout. A value published before this call is consumed immediately.
+	 */
+	CompletableFuture<V> await(K key, long timeoutMillis) {
+		var waiter = new CompletableFuture<V>();
+		slots.compute(key, (k, slot) -> {
+			if (slot != null && slot.pending != null) {
+				waiter.complete(slot.pending);
+				return null;
+			}
+			if (slot == null) {
+				slot = new Slot<>();
+			}
+			slot.waiters.add(waiter);
+			return slot;
+		});
+		if (!waiter.isDone()) {
+			waiters.increment();
+			waiter.completeOnTimeout(null, Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS)
+					.whenComplete((value, ex) -> {
+						waiters.decrement();
+						if (value == null) {
+							removeWaiter(key, waiter);
+						}
+					});
+		}
+		return waiter;
+	}
+
+	/**
+	 * Completes every waiter currently registered for the key, or holds the value for the next
+	 * one if nobody is waiting. A held value is replaced by later publications for the same key.
+	 */
+	void publish(K key, V value) {
+		boolean delivered;
+		do {
+			var taken = new ArrayList<CompletableFuture<V>>(1);
+			slots.compute(key, (k, slot) -> {
+				if (slot == null || slot.waiters.isEmpty()) {
+					var held = new Slot<V>();
+					held.pending = value;
+					return held;
+				}
+				taken.addAll(slot.waiters);
+				return null;
+			});
+			delivered = taken.isEmpty();
+			for (var waiter : taken) {
+				// A waiter may have timed out between being taken and completed.
+				delivered |= waiter.complete(value);
+			}
+		}
+		while (!delivered);
+	}
+
+	private void removeWaiter(K key, CompletableFuture<V> waiter) {
+		slots.compute(key, (k, slot) -> {
+			if (slot == null) return null;
+			slot.waiters.remove(waiter);
+			return slot.waiters.isEmpty() && slot.pending == null ? null : slot;
+		});
+	}
+}
@@ -34,10 +34,28 @@ import com.vonage.client.voice.MachineDetection;
 import com.vonage.client.voice.ncco.TalkAction;
 import com.vonage.sample.serversdk.springboot.VoiceController.VoiceCallParams;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Controller
@@ -46,10 +64,64 @@ public final class MessagesController extends VonageController {
 			MESSAGES_TEMPLATE = "messages",
 			COMMAND_CENTRE_TEMPLATE = "command_centre",
 			MESSAGE_PARAMS_NAME = "messageParams";
-
-	private final Map<UUID, InboundMessage> inboundMessages = new HashMap<>();
-	private final Map<UUID, MessageStatus> messageStatuses = new HashMap<>();
-	private final List<String> coordinates = new ArrayList<>();
+	static final int COORDINATE_BUFFER_SIZE = 4096, MAX_COORDINATE_BATCH = 1000;
+	static final Duration HOTSPOT_WINDOW = Duration.ofMinutes(15), HOTSPOT_RETENTION = Duration.ofHours(1);
+	static final double HOTSPOT_CELL_DEGREES = 0.01;
+	static final int MAX_HOTSPOT_CELLS = 4096;
+	static final Set<MessageStatus.Status> FINAL_STATUSES = EnumSet.of(
+			MessageStatus.Status.READ, MessageStatus.Status.REJECTED, MessageStatus.Status.UNDELIVERABLE
+	);
+	static final Set<Channel> READ_RECEIPT_CHANNELS = EnumSet.of(
+			Channel.WHATSAPP, Channel.MESSENGER, Channel.VIBER, Channel.RCS
+	);
+
+	private final LongPollHub<UUID, InboundMessage> inboundMessages = new LongPollHub<>();
+	private final LongPollHub<UUID, MessageStatus> messageStatuses = new LongPollHub<>();
+	private final RingBuffer<Coordinate> coordinates =
+			new RingBuffer<>(COORDINATE_BUFFER_SIZE, RingBuffer.Overflow.OVERWRITE_OLDEST);
+	private final HotspotIndex hotspots = new HotspotIndex(HOTSPOT_CELL_DEGREES, HOTSPOT_RETENTION, MAX_HOTSPOT_CELLS);
+	private final Map<Channel, TokenBucket> channelLimits = new EnumMap<>(Channel.class);
+
+	@Autowired
+	private FanOutStreamer fanOutStreamer;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	record Coordinate(double latitude, double longitude, Instant receivedAt) {}
+
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	record BulkRecipient(String to, String text, String url) {}
+
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	record BulkResult(String to, UUID messageUuid, String error) {}
+
+	@PostConstruct
+	void init() {
+		getMetrics().registerHub("inbound_message", inboundMessages);
+		getMetrics().registerHub("message_status", messageStatuses);
+		getWebhookPipeline().register(Metrics.WebhookType.INBOUND_MESSAGE, this::processInboundMessage);
+		getWebhookPipeline().register(Metrics.WebhookType.MESSAGE_STATUS, this::processMessageStatus);
+		getOutboundJobQueue().register(OutboundJobQueue.Kind.MESSAGE, MessageParams.class, params -> {
+			var messageRequest = buildMessage(params);
+			var client = getMessagesClient(params.sandbox);
+			return timeApiCall(Metrics.ApiClient.MESSAGES, () -> client.sendMessage(messageRequest)).getMessageUuid();
+		});
+		getMetrics().registerGauge("vonage_coordinates_buffered", "gauge",
+				"Coordinate reports waiting for the command centre.", coordinates::size
+		);
+		getMetrics().registerGauge("vonage_coordinates_dropped_total", "counter",
+				"Coordinate reports overwritten because the buffer was full.", coordinates::droppedCount
+		);
+		getMetrics().registerGauge("vonage_hotspot_cells", "gauge",
+				"Grid cells with coordinate reports in the retention period.", hotspots::cellCount
+		);
+		var bulk = getConfiguration().bulk;
+		for (var channel : Channel.values()) {
+			double rate = bulk.ratePerSecond(channel);
+			channelLimits.put(channel, new TokenBucket(rate, Math.max(rate, 1)));
+		}
+	}
 
 	private MessageRequest applyCommonParams(MessageRequest.Builder<?, ?> builder, MessageParams params) {
 		return builder.from(params.from).to(params.to).build();
@@ -126,7 +198,7 @@ public final class MessagesController extends VonageController {
 	@ResponseBody
 	@GetMapping("getMessageTypes")
 	public String getMessageTypes(@RequestParam String channel) {
-		var channelEnum = Channel.valueOf(channel);
+		var channelEnum = parseChannel(channel);
 		return "[" + channelEnum.getSupportedOutboundMessageTypes().stream()
 				.filter(mt -> mt != TEMPLATE && mt != CUSTOM && mt != REACTION &&
 						(channelEnum != Channel.VIBER || mt != VIDEO)
@@ -135,6 +207,15 @@ public final class MessagesController extends VonageController {
 				.collect(Collectors.joining(",")) + "]";
 	}
 
+	private static Channel parseChannel(String channel) {
+		try {
+			return Channel.valueOf(channel);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown channel: " + channel);
+		}
+	}
+
 	private String setAndReturnTemplate(Model model, MessageParams messageParams) {
 		model.addAttribute(MESSAGE_PARAMS_NAME, messageParams);
 		return MESSAGES_TEMPLATE;
@@ -158,35 +239,61 @@ public final class MessagesController extends VonageController {
 		messageParams.sandbox = true;
 		messageParams.selectedType = "LOCATION";
 		messageParams.speech = "Proceed with 2 teams of 5";
-        synchronized (coordinates) {
-            if (!coordinates.isEmpty()) {
-                var coord = coordinates.remove(0).split(",");
-                messageParams.latitude = Double.parseDouble(coord[0]);
-                messageParams.longitude = Double.parseDouble(coord[1]);
+        var densest = hotspots.top(1, HOTSPOT_WINDOW);
+        if (!densest.isEmpty()) {
+            messageParams.latitude = densest.get(0).latitude();
+            messageParams.longitude = densest.get(0).longitude();
+        }
+        else {
+            var coordinate = coordinates.poll();
+            if (coordinate != null) {
+                messageParams.latitude = coordinate.latitude();
+                messageParams.longitude = coordinate.longitude();
             }
         }
 		model.addAttribute(MESSAGE_PARAMS_NAME, messageParams);
 		return COMMAND_CENTRE_TEMPLATE;
 	}
 
+	@ResponseBody
+	@GetMapping("/commandCentre/coordinates")
+	public String nextCoordinates(@RequestParam(defaultValue = "10") int max) {
+		var batch = new ArrayList<Coordinate>(Math.min(Math.max(max, 0), MAX_COORDINATE_BATCH));
+		coordinates.drainTo(batch, Math.min(max, MAX_COORDINATE_BATCH));
+		return "[" + batch.stream()
+				.map(c -> "{\"latitude\":" + c.latitude() + ",\"longitude\":" + c.longitude() +
+						",\"receivedAt\":\"" + c.receivedAt() + "\"}"
+				)
+				.collect(Collectors.joining(",")) + "]";
+	}
+
+	@ResponseBody
+	@GetMapping("/commandCentre/hotspots")
+	public String hotspots(@RequestParam(defaultValue = "5") int limit, @RequestParam(defaultValue = "15") long minutes) {
+		if (minutes < 1 || minutes > HOTSPOT_RETENTION.toMinutes()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"minutes must be between 1 and " + HOTSPOT_RETENTION.toMinutes() + "."
+			);
+		}
+		return "[" + hotspots.top(Math.min(limit, MAX_COORDINATE_BATCH), Duration.ofMinutes(minutes)).stream()
+				.map(h -> "{\"latitude\":" + h.latitude() + ",\"longitude\":" + h.longitude() +
+						",\"reports\":" + h.reports() + ",\"lastReport\":\"" + h.lastReport() + "\"}"
+				)
+				.collect(Collectors.joining(",")) + "]";
+	}
+
 	@PostMapping("/sendLocationMessage")
 	public String sendLocationMessage(@ModelAttribute(MESSAGE_PARAMS_NAME) MessageParams messageParams, Model model) {
 		try {
 			var messageRequest = buildMessage(messageParams);
-			var client = getVonageClient().getMessagesClient();
-			if (messageParams.sandbox) {
-				client.useSandboxEndpoint();
-			}
-			else {
-				client.useRegularEndpoint();
-			}
-			var response = client.sendMessage(messageRequest);
+			var client = getMessagesClient(messageParams.sandbox);
+			var response = timeApiCall(Metrics.ApiClient.MESSAGES, () -> client.sendMessage(messageRequest));
 			messageParams.messageId = response.getMessageUuid();
             model.addAttribute(MESSAGE_PARAMS_NAME, messageParams);
             return COMMAND_CENTRE_TEMPLATE;
 		}
 		catch (Exception ex) {
-			return errorTemplate(model, ex);
+			return retryOrErrorTemplate(model, ex, OutboundJobQueue.Kind.MESSAGE, messageParams);
 		}
 	}
 
@@ -194,33 +301,73 @@ public final class MessagesController extends VonageController {
 	public String sendMessage(@ModelAttribute(MESSAGE_PARAMS_NAME) MessageParams messageParams, Model model) {
 		try {
 			var messageRequest = buildMessage(messageParams);
-			var client = getVonageClient().getMessagesClient();
-			if (messageParams.sandbox) {
-				client.useSandboxEndpoint();
-			}
-			else {
-				client.useRegularEndpoint();
-			}
-			var response = client.sendMessage(messageRequest);
+			var client = getMessagesClient(messageParams.sandbox);
+			var response = timeApiCall(Metrics.ApiClient.MESSAGES, () -> client.sendMessage(messageRequest));
 			messageParams.messageId = response.getMessageUuid();
 			return setAndReturnTemplate(model, messageParams);
 		}
 		catch (Exception ex) {
-			return errorTemplate(model, ex);
+			return retryOrErrorTemplate(model, ex, OutboundJobQueue.Kind.MESSAGE, messageParams);
 		}
 	}
 
+	@PostMapping(value = "/messages/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<ResponseBodyEmitter> sendBulkJson(
+			@ModelAttribute(MESSAGE_PARAMS_NAME) MessageParams template, InputStream body) throws IOException {
+		Iterator<BulkRecipient> recipients = objectMapper.readerFor(BulkRecipient.class).readValues(body);
+		return sendBulk(template, recipients);
+	}
+
+	@PostMapping(value = "/messages/bulk", consumes = "text/csv")
+	public ResponseEntity<ResponseBodyEmitter> sendBulkCsv(
+			@ModelAttribute(MESSAGE_PARAMS_NAME) MessageParams template, InputStream body) {
+		var reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+		var recipients = reader.lines()
+				.filter(line -> !line.isBlank() && !line.startsWith("to,"))
+				.map(line -> {
+					var columns = line.split(",", 2);
+					return new BulkRecipient(columns[0].trim(), columns.length > 1 ? columns[1] : null, null);
+				})
+				.iterator();
+		return sendBulk(template, recipients);
+	}
+
+	private ResponseEntity<ResponseBodyEmitter> sendBulk(MessageParams template, Iterator<BulkRecipient> recipients) {
+		if (template.selectedChannel == null || template.selectedType == null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "selectedChannel and selectedType are required.");
+		}
+		var limiter = channelLimits.get(parseChannel(template.selectedChannel));
+		var client = getMessagesClient(template.sandbox);
+		return fanOutStreamer.stream(recipients, getConfiguration().bulk.parallelism(), limiter, recipient -> {
+			try {
+				var messageRequest = buildMessage(template.forRecipient(recipient));
+				var response = timeApiCall(Metrics.ApiClient.MESSAGES, () -> client.sendMessage(messageRequest));
+				return new BulkResult(recipient.to(), response.getMessageUuid(), null);
+			}
+			catch (RuntimeException ex) {
+				return new BulkResult(recipient.to(), null, ex.getMessage());
+			}
+		});
+	}
+
 	@ResponseBody
 	@GetMapping(ApplicationConfiguration.INBOUND_MESSAGE_ENDPOINT)
     public String inboundWebhookGet(@RequestParam Map<String, String> params) {
         System.out.println(params.keySet());
         System.out.println(params.values());
         var text = params.get("text");
-        if (text.startsWith("coord:")) {
+        if (text != null && text.startsWith("coord:")) {
             var coord = text.substring(6).split(",");
-            System.out.println("coord: " + coord[0] + "," + coord[1]);
-            synchronized (coordinates) {
-                coordinates.add(text.substring(6));
+            System.out.println("coord: " + coord[0] + "," + (coord.length > 1 ? coord[1] : ""));
+            try {
+                var coordinate = new Coordinate(
+                        Double.parseDouble(coord[0].trim()), Double.parseDouble(coord[1].trim()), Instant.now()
+                );
+                hotspots.add(coordinate.latitude(), coordinate.longitude());
+                coordinates.add(coordinate);
+            }
+            catch (IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+                logger.warning("Ignoring malformed coordinate report: "+text);
             }
         }
         return standardWebhookResponse();
@@ -228,39 +375,33 @@ public final class MessagesController extends VonageController {
 
 	@ResponseBody
 	@PostMapping(ApplicationConfiguration.INBOUND_MESSAGE_ENDPOINT)
-	public String inboundWebhook(@RequestBody InboundMessage payload) {
-		synchronized (inboundMessages) {
-			inboundMessages.put(payload.getMessageUuid(), payload);
-			inboundMessages.notify();
-		}
-		return standardWebhookResponse();
+	public String inboundWebhook(@RequestBody String payload) {
+		return acceptWebhook(Metrics.WebhookType.INBOUND_MESSAGE, payload);
+	}
+
+	private void processInboundMessage(String payload) {
+		var parsed = InboundMessage.fromJson(payload);
+		inboundMessages.publish(parsed.getMessageUuid(), parsed);
 	}
 
 	@ResponseBody
 	@PostMapping(ApplicationConfiguration.MESSAGE_STATUS_ENDPOINT)
-	public String statusWebhook(@RequestBody MessageStatus payload) {
-		synchronized (messageStatuses) {
-			messageStatuses.put(payload.getMessageUuid(), payload);
-			messageStatuses.notify();
-		}
-		return standardWebhookResponse();
+	public String statusWebhook(@RequestBody String payload) {
+		return acceptWebhook(Metrics.WebhookType.MESSAGE_STATUS, payload);
+	}
+
+	private void processMessageStatus(String payload) {
+		var parsed = MessageStatus.fromJson(payload);
+		messageStatuses.publish(parsed.getMessageUuid(), parsed);
 	}
 
 	@ResponseBody
 	@GetMapping("getMessageStatusUpdate")
-	public String getMessageStatusUpdate(@RequestParam UUID messageId, @RequestParam long timeout) {
-		MessageStatus status;
-		synchronized (messageStatuses) {
-			if ((status = messageStatuses.remove(messageId)) == null) {
-				try {
-					messageStatuses.wait(timeout);
-				}
-				catch (InterruptedException ie) {
-					// Continue;
-				}
-				status = messageStatuses.remove(messageId);
-			}
-		}
+	public CompletableFuture<String> getMessageStatusUpdate(@RequestParam UUID messageId, @RequestParam long timeout) {
+		return messageStatuses.await(messageId, timeout).thenApply(this::formatMessageStatus);
+	}
+
+	private String formatMessageStatus(MessageStatus status) {
 		if (status == null) return "";
 		var formatted = status.getStatus().name();
 		if (status.getTimestamp() != null) {
@@ -275,19 +416,32 @@ public final class MessagesController extends VonageController {
 
 	@ResponseBody
 	@GetMapping("getInboundMessage")
-	public String getInboundMessage(@RequestParam UUID messageId, @RequestParam long timeout) {
-		InboundMessage inbound;
-		synchronized (inboundMessages) {
-			if ((inbound = inboundMessages.remove(messageId)) == null) {
-				try {
-					inboundMessages.wait(timeout);
-				}
-				catch (InterruptedException ie) {
-					// Continue;
-				}
-				inbound = inboundMessages.remove(messageId);
-			}
-		}
+	public CompletableFuture<String> getInboundMessage(@RequestParam UUID messageId, @RequestParam long timeout) {
+		return inboundMessages.await(messageId, timeout).thenApply(this::formatInboundMessage);
+	}
+
+	/**
+	 * Streams status updates and the inbound reply for a sent message as {@code status} and
+	 * {@code inbound} events, replacing repeated calls to the two long-poll endpoints above.
+	 */
+	@GetMapping(value = "/messages/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter messageEvents(@RequestParam UUID messageId) {
+		return new SseRelay(EVENT_STREAM_TIMEOUT)
+				.relay(messageStatuses, messageId, "status", this::formatMessageStatus, this::isFinalStatus, true)
+				.relay(inboundMessages, messageId, "inbound", this::formatInboundMessage, inbound -> true, false)
+				.emitter();
+	}
+
+	/**
+	 * Whether no further status will follow. Delivery is final on channels that never report reads.
+	 */
+	private boolean isFinalStatus(MessageStatus status) {
+		return FINAL_STATUSES.contains(status.getStatus()) || (
+				status.getStatus() == MessageStatus.Status.DELIVERED && !READ_RECEIPT_CHANNELS.contains(status.getChannel())
+		);
+	}
+
+	private String formatInboundMessage(InboundMessage inbound) {
 		if (inbound == null) return "";
 		var formatted = inbound.getMessageType().name()+" received";
 		if (inbound.getTimestamp() != null) {
@@ -306,6 +460,21 @@ public final class MessagesController extends VonageController {
 		private double latitude, longitude;
 		private String from, to, text, url, address, selectedChannel, selectedType, speech;
 
+		MessageParams forRecipient(BulkRecipient recipient) {
+			var copy = new MessageParams();
+			copy.sandbox = sandbox;
+			copy.latitude = latitude;
+			copy.longitude = longitude;
+			copy.from = from;
+			copy.to = recipient.to();
+			copy.text = recipient.text() != null ? recipient.text() : text;
+			copy.url = recipient.url() != null ? recipient.url() : url;
+			copy.address = address;
+			copy.selectedChannel = selectedChannel;
+			copy.selectedType = selectedType;
+			return copy;
+		}
+
 		public UUID getMessageId() {
 			return messageId;
 		}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Counters and latency histograms rendered in the Prometheus text format. Everything on the
+ * recording path is a pre-allocated {@link LongAdder}, so instrumented handlers only pay for
+ * a few uncontended increments.
+ */
+@Component
+public class Metrics implements HandlerInterceptor {
+	static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final String REQUEST_START_ATTRIBUTE = Metrics.class.getName() + ".start";
+	private static final String[] METHODS = {"GET", "POST", "OTHER"};
+
+	enum WebhookType {
+		INBOUND_MESSAGE, MESSAGE_STATUS, VOICE_EVENT, VERIFY_STATUS
+	}
+
+	enum ApiClient {
+		MESSAGES, VOICE, VERIFY2, ACCOUNT, NUMBERS, INSIGHT, SIM_SWAP, NUMBER_VERIFICATION
+	}
+
+	static final class Histogram {
+		private static final long[] BOUNDS_NANOS = {
+				TimeUnit.MICROSECONDS.toNanos(500), TimeUnit.MILLISECONDS.toNanos(1),
+				TimeUnit.MILLISECONDS.toNanos(5), TimeUnit.MILLISECONDS.toNanos(10),
+				TimeUnit.MILLISECONDS.toNanos(25), TimeUnit.MILLISECONDS.toNanos(50),
+				TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(250),
+				TimeUnit.MILLISECONDS.toNanos(500), TimeUnit.SECONDS.toNanos(1),
+				TimeUnit.MILLISECONDS.toNanos(2500), TimeUnit.SECONDS.toNanos(5),
+				TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(30)
+		};
+
+		private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+		private final LongAdder sumNanos = new LongAdder(), errors = new LongAdder();
+
+		Histogram() {
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		long count() {
+			long count = 0;
+			for (var bucket : buckets) {
+				count += bucket.sum();
+			}
+			return count;
+		}
+
+		void record(long nanos) {
+			int i = 0;
+			while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) i++;
+			buckets[i].increment();
+			sumNanos.add(nanos);
+		}
+
+		void render(StringBuilder out, String name, String labels) {
+			long cumulative = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				cumulative += buckets[i].sum();
+				var le = i < BOUNDS_NANOS.length ? Double.toString(BOUNDS_NANOS[i] / 1e9) : "+Inf";
+				out.append(name).append("_bucket{").append(labels).append(",le=\"")
+						.append(le).append("\"} ").append(cumulative).append('\n');
+			}
+			out.append(name).append("_sum{").append(labels).append("} ")
+					.append(sumNanos.sum() / 1e9).append('\n');
+			out.append(name).append("_count{").append(labels).append("} ")
+					.append(cumulative).append('\n');
+		}
+	}
+
+	private final Map<String, Histogram[]> requests = new ConcurrentSkipListMap<>();
+	private final LongAdder[] webhooks = new LongAdder[WebhookType.values().length];
+	private final Histogram[] apiCalls = new Histogram[ApiClient.values().length];
+	private final Map<String, LongPollHub<?, ?>> hubs = new ConcurrentHashMap<>();
+	private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+	private record Gauge(String type, String help, LongSupplier value) {}
+
+	public Metrics() {
+		for (int i = 0; i < webhooks.length; i++) {
+			webhooks[i] = new LongAdder();
+		}
+		for (int i = 0; i < apiCalls.length; i++) {
+			apiCalls[i] = new Histogram();
+		}
+	}
+
+	void webhookReceived(WebhookType type) {
+		webhooks[type.ordinal()].increment();
+	}
+
+	void registerHub(String name, LongPollHub<?, ?> hub) {
+		hubs.put(name, hub);
+	}
+
+	/**
+	 * Registers a value read at scrape time. Components use this for their own queue depths and
+	 * counters so they do not need to depend on the rendering code.
+	 */
+	void registerGauge(String name, String type, String help, LongSupplier value) {
+		gauges.put(name, new Gauge(type, help, value));
+	}
+
+	void recordApiCall(ApiClient client, long startNanos, boolean failed) {
+		var histogram = apiCalls[client.ordinal()];
+		histogram.record(System.nanoTime() - startNanos);
+		if (failed) {
+			histogram.errors.increment();
+		}
+	}
+
+	<T> T timeApiCall(ApiClient client, Supplier<T> call) {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			var result = call.get();
+			failed = false;
+			return result;
+		}
+		finally {
+			recordApiCall(client, start, failed);
+		}
+	}
+
+	void timeApiCall(ApiClient client, Runnable call) {
+		timeApiCall(client, () -> {
+			call.run();
+			return null;
+		});
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		// Async requests are dispatched twice; keep the original start time.
+		if (request.getAttribute(REQUEST_START_ATTRIBUTE) == null) {
+			request.setAttribute(REQUEST_START_ATTRIBUTE, System.nanoTime());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		if (!(handler instanceof HandlerMethod) ||
+				!(request.getAttribute(REQUEST_START_ATTRIBUTE) instanceof Long start)) return;
+		var endpoint = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		if (!(endpoint instanceof String pattern)) return;
+		var byMethod = requests.get(pattern);
+		if (byMethod == null) {
+			byMethod = requests.computeIfAbsent(pattern, k -> {
+				var histograms = new Histogram[METHODS.length];
+				for (int i = 0; i < histograms.length; i++) {
+					histograms[i] = new Histogram();
+				}
+				return histograms;
+			});
+		}
+		var method = request.getMethod();
+		var histogram = byMethod["GET".equals(method) ? 0 : "POST".equals(method) ? 1 : 2];
+		histogram.record(System.nanoTime() - start);
+		if (ex != null || response.getStatus() >= 500) {
+			histogram.errors.increment();
+		}
+	}
+
+	private void renderRequests(StringBuilder out, BiConsumer<String, Histogram> renderer) {
+		requests.forEach((endpoint, byMethod) -> {
+			for (int i = 0; i < byMethod.length; i++) {
+				if (byMethod[i].count() > 0) {
+					renderer.accept("method=\"" + METHODS[i] + "\",endpoint=\"" + endpoint + '"', byMethod[i]);
+				}
+			}
+		});
+	}
+
+	private static String label(Enum<?> value) {
+		return value.name().toLowerCase(Locale.ROOT);
+	}
+
+	private static void header(StringBuilder out, String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	String render() {
+		var out = new StringBuilder(4096);
+
+		header(out, "http_server_requests_seconds", "histogram", "Latency of handled HTTP requests.");
+		renderRequests(out, (labels, h) -> h.render(out, "http_server_requests_seconds", labels));
+		header(out, "http_server_requests_errors_total", "counter", "HTTP requests that failed with a server error.");
+		renderRequests(out, (labels, h) -> out.append("http_server_requests_errors_total{")
+				.append(labels).append("} ").append(h.errors.sum()).append('\n')
+		);
+
+		header(out, "vonage_webhooks_received_total", "counter", "Webhooks received, by type.");
+		for (var type : WebhookType.values()) {
+			out.append("vonage_webhooks_received_total{type=\"").append(label(type)).append("\"} ")
+					.append(webhooks[type.ordinal()].sum()).append('\n');
+		}
+
+		header(out, "vonage_api_call_seconds", "histogram", "Latency of outbound Vonage API calls, by client.");
+		for (var client : ApiClient.values()) {
+			apiCalls[client.ordinal()].render(out, "vonage_api_call_seconds", "client=\"" + label(client) + '"');
+		}
+		header(out, "vonage_api_call_errors_total", "counter", "Outbound Vonage API calls that threw, by client.");
+		for (var client : ApiClient.values()) {
+			out.append("vonage_api_call_errors_total{client=\"").append(label(client)).append("\"} ")
+					.append(apiCalls[client.ordinal()].errors.sum()).append('\n');
+		}
+
+		header(out, "vonage_longpoll_waiters", "gauge", "Requests currently waiting on a long-poll hub.");
+		hubs.forEach((name, hub) -> out.append("vonage_longpoll_waiters{hub=\"").append(name).append("\"} ")
+				.append(hub.waiterCount()).append('\n')
+		);
+		header(out, "vonage_longpoll_entries", "gauge", "Keys currently held by a long-poll hub.");
+		hubs.forEach((name, hub) -> out.append("vonage_longpoll_entries{hub=\"").append(name).append("\"} ")
+				.append(hub.store().size()).append('\n')
+		);
+		header(out, "vonage_longpoll_lookups_total", "counter", "Long-poll hub lookups, by whether the key was held.");
+		hubs.forEach((name, hub) -> {
+			var store = hub.store();
+			out.append("vonage_longpoll_lookups_total{hub=\"").append(name).append("\",result=\"hit\"} ")
+					.append(store.hitCount()).append('\n');
+			out.append("vonage_longpoll_lookups_total{hub=\"").append(name).append("\",result=\"miss\"} ")
+					.append(store.missCount()).append('\n');
+		});
+		header(out, "vonage_longpoll_evictions_total", "counter", "Held webhook payloads dropped by size or age.");
+		hubs.forEach((name, hub) -> {
+			var store = hub.store();
+			out.append("vonage_longpoll_evictions_total{hub=\"").append(name).append("\",cause=\"size\"} ")
+					.append(store.evictionCount()).append('\n');
+			out.append("vonage_longpoll_evictions_total{hub=\"").append(name).append("\",cause=\"expired\"} ")
+					.append(store.expirationCount()).append('\n');
+		});
+
+		gauges.forEach((name, gauge) -> {
+			header(out, name, gauge.type, gauge.help);
+			out.append(name).append(' ').append(gauge.value.getAsLong()).append('\n');
+		});
+		return out.toString();
+	}
+}
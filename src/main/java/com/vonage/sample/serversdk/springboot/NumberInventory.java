@@ -0,0 +1,262 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import com.vonage.client.numbers.ListNumbersFilter;
+import com.vonage.client.numbers.OwnedNumber;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local copy of the numbers owned by the account, indexed by country, type and feature. It is
+ * filled page by page from the Numbers API, both by a periodic background sync and by any live
+ * listing. Numbers missing from a completed sync are dropped; a live listing only adds, so a
+ * number cancelled elsewhere stays until the next sync. A number cancelled here is remembered for
+ * a few minutes so that a listing already in flight cannot add it back.
+ */
+@Component
+public class NumberInventory {
+	static final int PAGE_SIZE = 100;
+	private static final Duration CANCELLED_TTL = Duration.ofMinutes(5);
+
+	private final Logger logger = Logger.getLogger("inventory");
+
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private AccountRateLimiter accountRateLimiter;
+
+	@Autowired
+	private Metrics metrics;
+
+	private final Map<String, OwnedNumber> numbers = new ConcurrentHashMap<>();
+	private final Map<String, Set<String>> byCountry = new ConcurrentHashMap<>(),
+			byType = new ConcurrentHashMap<>(), byFeature = new ConcurrentHashMap<>();
+	private final ExpiringStore<String, Boolean> cancelled = new ExpiringStore<>(1024, CANCELLED_TTL);
+	private ScheduledExecutorService scheduler;
+	private volatile Instant lastSync;
+
+	@PostConstruct
+	void init() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			var thread = new Thread(task, "inventory-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::sync, 0,
+				configuration.account.inventorySyncInterval().toMillis(), TimeUnit.MILLISECONDS
+		);
+		metrics.registerGauge("vonage_owned_numbers", "gauge",
+				"Owned numbers in the local inventory.", () -> numbers.size()
+		);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * When the last full sync completed, or {@code null} if none has yet.
+	 */
+	Instant lastSync() {
+		return lastSync;
+	}
+
+	/**
+	 * Pages through every owned number at the given priority, adding each page to the inventory
+	 * before passing it on.
+	 *
+	 * @return The numbers seen, for pruning after a complete listing.
+	 */
+	Set<String> fetchAll(AccountRateLimiter.Priority priority, Consumer<OwnedNumber[]> pageConsumer) {
+		var seen = new HashSet<String>();
+		var client = configuration.vonageClient.getNumbersClient();
+		for (int index = 1; ; index++) {
+			var filter = ListNumbersFilter.builder().index(index).size(PAGE_SIZE).build();
+			var page = accountRateLimiter.submit(priority, Metrics.ApiClient.NUMBERS, () -> client.listNumbers(filter)).join();
+			var owned = page.getNumbers() != null ? page.getNumbers() : new OwnedNumber[0];
+			for (var number : owned) {
+				put(number);
+				seen.add(number.getMsisdn());
+			}
+			pageConsumer.accept(owned);
+			if (owned.length < PAGE_SIZE || (page.getCount() != null && seen.size() >= page.getCount())) {
+				return seen;
+			}
+		}
+	}
+
+	void sync() {
+		try {
+			var seen = fetchAll(AccountRateLimiter.Priority.BACKGROUND, page -> {});
+			for (var msisdn : List.copyOf(numbers.keySet())) {
+				if (!seen.contains(msisdn)) {
+					remove(msisdn);
+				}
+			}
+			lastSync = Instant.now();
+		}
+		catch (RuntimeException ex) {
+			logger.log(Level.WARNING, "Owned numbers sync failed", ex);
+		}
+	}
+
+	/**
+	 * Starts a sync in the background, for example after buying a number.
+	 */
+	void requestSync() {
+		scheduler.execute(this::sync);
+	}
+
+	private static String key(Object value) {
+		return String.valueOf(value).toUpperCase(Locale.ROOT);
+	}
+
+	private static List<String> features(OwnedNumber number) {
+		var features = number.getFeatures();
+		return features == null ? List.of() : Arrays.stream(features).map(NumberInventory::key).toList();
+	}
+
+	private static void index(Map<String, Set<String>> index, String key, String msisdn) {
+		index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(msisdn);
+	}
+
+	private static void unindex(Map<String, Set<String>> index, String key, String msisdn) {
+		index.computeIfPresent(key, (k, set) -> {
+			set.remove(msisdn);
+			return set.isEmpty() ? null : set;
+		});
+	}
+
+	/**
+	 * Adds or updates a number, unless it was cancelled in the last few minutes.
+	 */
+	synchronized void put(OwnedNumber number) {
+		var msisdn = number.getMsisdn();
+		if (cancelled.get(msisdn) != null) return;
+		var previous = numbers.put(msisdn, number);
+		if (previous != null) {
+			unindexAll(previous);
+		}
+		index(byCountry, key(number.getCountry()), msisdn);
+		index(byType, key(number.getType()), msisdn);
+		for (var feature : features(number)) {
+			index(byFeature, feature, msisdn);
+		}
+	}
+
+	synchronized void remove(String msisdn) {
+		var previous = numbers.remove(msisdn);
+		if (previous != null) {
+			unindexAll(previous);
+		}
+	}
+
+	/**
+	 * Removes a number that has just been cancelled and keeps listings already in flight from adding it back.
+	 */
+	synchronized void cancelled(String msisdn) {
+		cancelled.put(msisdn, Boolean.TRUE);
+		remove(msisdn);
+	}
+
+	/**
+	 * Forgets any recent cancellation of a number that has just been bought and starts a sync to pick it up.
+	 */
+	void bought(String msisdn) {
+		cancelled.remove(msisdn);
+		requestSync();
+	}
+
+	private void unindexAll(OwnedNumber number) {
+		var msisdn = number.getMsisdn();
+		unindex(byCountry, key(number.getCountry()), msisdn);
+		unindex(byType, key(number.getType()), msisdn);
+		for (var feature : features(number)) {
+			unindex(byFeature, feature, msisdn);
+		}
+	}
+
+	private static void addCandidates(List<Set<String>> candidates, Map<String, Set<String>> index, String filter) {
+		if (filter != null && !filter.isBlank()) {
+			candidates.add(index.getOrDefault(key(filter), Set.of()));
+		}
+	}
+
+	/**
+	 * Applies the same filters as {@link #find(String, String, String)} to a single number.
+	 */
+	static boolean matches(OwnedNumber number, String country, String type, String feature) {
+		return (country == null || country.isBlank() || key(country).equals(key(number.getCountry()))) &&
+				(type == null || type.isBlank() || key(type).equals(key(number.getType()))) &&
+				(feature == null || feature.isBlank() || features(number).contains(key(feature)));
+	}
+
+	/**
+	 * Returns the owned numbers matching every given filter; {@code null} filters match anything.
+	 * Starts from the smallest matching index and checks the others against it.
+	 */
+	List<OwnedNumber> find(String country, String type, String feature) {
+		var candidates = new ArrayList<Set<String>>(3);
+		addCandidates(candidates, byCountry, country);
+		addCandidates(candidates, byType, type);
+		addCandidates(candidates, byFeature, feature);
+		Collection<String> msisdns = numbers.keySet();
+		if (!candidates.isEmpty()) {
+			candidates.sort((a, b) -> Integer.compare(a.size(), b.size()));
+			msisdns = candidates.get(0);
+		}
+		var result = new ArrayList<OwnedNumber>();
+		for (var msisdn : msisdns) {
+			boolean matches = true;
+			for (int i = 1; i < candidates.size() && matches; i++) {
+				matches = candidates.get(i).contains(msisdn);
+			}
+			var number = matches ? numbers.get(msisdn) : null;
+			if (number != null) {
+				result.add(number);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import com.vonage.client.numbers.AvailableNumber;
+import com.vonage.client.numbers.SearchNumbersFilter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Available numbers per country, searched for in batches and held in memory so that showing a
+ * number to buy is a random pick rather than a search. A country's stock is refilled in the
+ * background when removals drain it below the low watermark or it gets old, and a search that
+ * finds nothing is remembered for a while so "no numbers" is answered without asking again. A
+ * short batch is kept as it is until it gets old, since searching again would find the same.
+ * Only ISO country codes are accepted, and a country whose first search fails is forgotten.
+ */
+@Component
+public class NumberReservoir {
+	private final Logger logger = Logger.getLogger("reservoir");
+
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private AccountRateLimiter accountRateLimiter;
+
+	@Autowired
+	private Metrics metrics;
+
+	private final Map<String, Stock> stocks = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(), refills = new LongAdder();
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * One country's numbers. Removal swaps the last element into the gap, so picks and removals
+	 * are constant time.
+	 */
+	private static final class Stock {
+		final List<AvailableNumber> numbers = new ArrayList<>();
+		final Map<String, Integer> positions = new HashMap<>();
+		long fetchedAt;
+		int fetchedSize;
+		CompletableFuture<Void> refill;
+
+		synchronized void replace(AvailableNumber[] batch, long now) {
+			numbers.clear();
+			positions.clear();
+			for (var number : batch) {
+				if (positions.putIfAbsent(number.getMsisdn(), numbers.size()) == null) {
+					numbers.add(number);
+				}
+			}
+			fetchedAt = now;
+			fetchedSize = numbers.size();
+		}
+
+		synchronized AvailableNumber pick() {
+			return numbers.isEmpty() ? null : numbers.get(ThreadLocalRandom.current().nextInt(numbers.size()));
+		}
+
+		synchronized void remove(String msisdn) {
+			var index = positions.remove(msisdn);
+			if (index == null) return;
+			var last = numbers.remove(numbers.size() - 1);
+			if (index < numbers.size()) {
+				numbers.set(index, last);
+				positions.put(last.getMsisdn(), index);
+			}
+		}
+
+		synchronized int size() {
+			return numbers.size();
+		}
+
+		/**
+		 * Whether numbers taken out since the last search have left fewer than the watermark.
+		 */
+		synchronized boolean isDrained(int lowWatermark) {
+			return numbers.size() < lowWatermark && numbers.size() < fetchedSize;
+		}
+
+		synchronized boolean isLoaded() {
+			return fetchedAt > 0;
+		}
+	}
+
+	@PostConstruct
+	void init() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			var thread = new Thread(task, "reservoir-refill");
+			thread.setDaemon(true);
+			return thread;
+		});
+		var interval = configuration.reservoir.sweepInterval().toMillis();
+		scheduler.scheduleWithFixedDelay(this::refillDue, interval, interval, TimeUnit.MILLISECONDS);
+		metrics.registerGauge("vonage_reservoir_numbers", "gauge",
+				"Available numbers held across all countries.",
+				() -> stocks.values().stream().mapToLong(Stock::size).sum()
+		);
+		metrics.registerGauge("vonage_reservoir_hits_total", "counter",
+				"Number picks answered from memory.", hits::sum
+		);
+		metrics.registerGauge("vonage_reservoir_misses_total", "counter",
+				"Number picks that had to wait for a search.", misses::sum
+		);
+		metrics.registerGauge("vonage_reservoir_refills_total", "counter",
+				"Batch searches for available numbers.", refills::sum
+		);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	private Stock stock(String country) {
+		return stocks.computeIfAbsent(country.toUpperCase(Locale.ROOT), k -> new Stock());
+	}
+
+	/**
+	 * Starts a batch search for the country at the given priority unless one is already running.
+	 */
+	private CompletableFuture<Void> refill(String country, Stock stock, AccountRateLimiter.Priority priority) {
+		synchronized (stock) {
+			if (stock.refill != null) return stock.refill;
+			refills.increment();
+			var filter = SearchNumbersFilter.builder().country(country).size(configuration.reservoir.batchSize()).build();
+			var future = accountRateLimiter.submit(priority, Metrics.ApiClient.NUMBERS, () ->
+					configuration.vonageClient.getNumbersClient().searchNumbers(filter)
+			).thenAccept(response -> {
+				var batch = response.getNumbers();
+				stock.replace(batch != null ? batch : new AvailableNumber[0], System.currentTimeMillis());
+			});
+			stock.refill = future;
+			future.whenComplete((done, ex) -> {
+				synchronized (stock) {
+					stock.refill = null;
+					if (ex != null && stock.fetchedAt == 0) {
+						stocks.remove(country, stock);
+					}
+				}
+			});
+			return future;
+		}
+	}
+
+	/**
+	 * Picks a random available number for the country. Completes immediately from memory once the
+	 * country has been searched, with {@code null} if it has no stock; the first request for a
+	 * country waits for the initial search.
+	 *
+	 * @throws IllegalArgumentException Through the returned future, if the country is not an ISO code.
+	 */
+	CompletableFuture<AvailableNumber> pick(String country) {
+		var key = country.toUpperCase(Locale.ROOT);
+		if (!PricingCache.COUNTRIES.contains(key)) {
+			return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown country code: " + country));
+		}
+		var stock = stock(key);
+		if (stock.isLoaded()) {
+			hits.increment();
+			var number = stock.pick();
+			if (number != null && stock.isDrained(configuration.reservoir.lowWatermark())) {
+				refill(key, stock, AccountRateLimiter.Priority.BACKGROUND);
+			}
+			return CompletableFuture.completedFuture(number);
+		}
+		misses.increment();
+		return refill(key, stock, AccountRateLimiter.Priority.INTERACTIVE).thenApply(done -> stock.pick());
+	}
+
+	/**
+	 * Takes a number out of stock, for example once it has been bought.
+	 */
+	void remove(String country, String msisdn) {
+		var stock = stocks.get(country.toUpperCase(Locale.ROOT));
+		if (stock != null) {
+			stock.remove(msisdn);
+		}
+	}
+
+	private void refillDue() {
+		var params = configuration.reservoir;
+		long now = System.currentTimeMillis();
+		for (var entry : stocks.entrySet()) {
+			if (Thread.currentThread().isInterrupted()) return;
+			var stock = entry.getValue();
+			long age;
+			boolean empty, drained;
+			synchronized (stock) {
+				if (stock.fetchedAt == 0) continue;
+				age = now - stock.fetchedAt;
+				empty = stock.numbers.isEmpty();
+				drained = stock.isDrained(params.lowWatermark());
+			}
+			boolean due = empty ? age >= params.emptyRetryAfter().toMillis() :
+					drained || age >= params.refreshAfter().toMillis();
+			if (!due) continue;
+			try {
+				refill(entry.getKey(), stock, AccountRateLimiter.Priority.BACKGROUND).join();
+			}
+			catch (RuntimeException ex) {
+				logger.log(Level.FINE, "Refilling numbers for "+entry.getKey()+" failed", ex);
+			}
+		}
+	}
+}
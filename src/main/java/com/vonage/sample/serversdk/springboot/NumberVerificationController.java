@@ -23,12 +23,12 @@ package com.vonage.sample.serversdk.springboot;
 
 import com.vonage.client.camara.numberverification.NumberVerificationClient;
 import static com.vonage.sample.serversdk.springboot.ApplicationConfiguration.NUMBER_VERIFICATION_REDIRECT_ENDPOINT;
+import jakarta.annotation.PostConstruct;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.view.RedirectView;
 import java.net.URI;
-import java.util.UUID;
 
 @Controller
 public final class NumberVerificationController extends VonageController {
@@ -37,6 +37,27 @@ public final class NumberVerificationController extends VonageController {
             NUMBER_VERIFICATION_PARAMS_NAME = "numberVerificationParams",
             NUMBER_VERIFICATION_URL = "/numberVerification";
 
+    private PendingVerifications pendingVerifications;
+
+    @PostConstruct
+    void init() {
+        var params = getConfiguration().numberVerification;
+        pendingVerifications = new PendingVerifications(params.maxPending(), params.ttl());
+        getMetrics().registerGauge("vonage_number_verification_pending", "gauge",
+                "Number verifications waiting for the operator redirect.", () -> pendingVerifications.store().size()
+        );
+        getMetrics().registerGauge("vonage_number_verification_started_total", "counter",
+                "Number verifications started.", pendingVerifications::startedCount
+        );
+        getMetrics().registerGauge("vonage_number_verification_expired_total", "counter",
+                "Number verifications dropped before the redirect arrived.",
+                () -> pendingVerifications.store().expirationCount() + pendingVerifications.store().evictionCount()
+        );
+        getMetrics().registerGauge("vonage_number_verification_unknown_state_total", "counter",
+                "Redirects whose state matched no pending verification.", pendingVerifications::unknownCount
+        );
+    }
+
     private NumberVerificationClient getNumberVerificationClient() {
         return getVonageClient().getNumberVerificationClient();
     }
@@ -52,14 +73,16 @@ public final class NumberVerificationController extends VonageController {
     @PostMapping(NUMBER_VERIFICATION_URL)
     public RedirectView buildVerificationUrl(@ModelAttribute NumberVerificationParams nvParams, Model model) {
         var redirectUrl = getServerUrl().resolve(NUMBER_VERIFICATION_REDIRECT_ENDPOINT);
+        var state = pendingVerifications.start(nvParams.msisdn, redirectUrl);
         try {
-            nvParams.url = getNumberVerificationClient().initiateVerification(
-                    nvParams.msisdn, redirectUrl, UUID.randomUUID().toString().replace("-", "")
+            nvParams.url = timeApiCall(Metrics.ApiClient.NUMBER_VERIFICATION, () ->
+                    getNumberVerificationClient().initiateVerification(nvParams.msisdn, redirectUrl, state)
             );
             model.addAttribute(NUMBER_VERIFICATION_PARAMS_NAME, nvParams);
             return new RedirectView(nvParams.url.toString());
         }
         catch (Exception ex) {
+            pendingVerifications.discard(state);
             return new RedirectView(ERROR_TEMPLATE);
         }
     }
@@ -67,16 +90,32 @@ public final class NumberVerificationController extends VonageController {
     @GetMapping(NUMBER_VERIFICATION_REDIRECT_ENDPOINT)
     public String inboundWebhook(@RequestParam String code, @RequestParam(required = false) String state, Model model) {
         System.out.println("Received code '"+code+"' with state '"+state+"'.");
-        boolean result = getNumberVerificationClient().verifyNumber(code);
+        var pending = pendingVerifications.complete(state);
+        if (pending == null) {
+            model.addAttribute("message", "Unknown or expired verification state.");
+            return ERROR_TEMPLATE;
+        }
+        boolean result = timeApiCall(Metrics.ApiClient.NUMBER_VERIFICATION, () ->
+                getNumberVerificationClient().verifyNumber(code)
+        );
         var nvParams = new NumberVerificationParams();
         nvParams.code = code;
-        nvParams.msisdn = state;
+        nvParams.msisdn = pending.msisdn();
         nvParams.state = state;
         nvParams.result = result ? "Number matches." : "Fraudulent!";
         model.addAttribute(NUMBER_VERIFICATION_PARAMS_NAME, nvParams);
         return NUMBER_VERIFICATION_TEMPLATE_NAME;
     }
 
+    /**
+     * Time from starting a verification to the operator redirecting back, over recent verifications.
+     */
+    @ResponseBody
+    @GetMapping(NUMBER_VERIFICATION_URL + "/latency")
+    public LatencyWindow.Summary numberVerificationLatency() {
+        return pendingVerifications.roundTrips();
+    }
+
     public static class NumberVerificationParams {
         private String msisdn, code, state, result;
         private URI url;
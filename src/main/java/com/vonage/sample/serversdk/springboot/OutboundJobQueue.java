@@ -0,0 +1,275 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vonage.client.VonageApiResponseException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Retries outbound sends that failed with a transient error. Jobs are journalled to a
+ * {@link WriteAheadLog} before being acknowledged, so pending work survives a restart, and are
+ * retried with exponential backoff and full jitter until they succeed or run out of attempts.
+ * Each failed attempt is journalled too, so the attempt limit holds across restarts.
+ * Delivery is at least once: a job that succeeded just before a crash may be sent again.
+ */
+@Component
+public class OutboundJobQueue {
+	private static final byte ENQUEUED = 1, FINISHED = 2, RETRIED = 3;
+	private static final long RECOVERY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+	private final Logger logger = Logger.getLogger("outbound");
+
+	enum Kind {
+		MESSAGE, CALL
+	}
+
+	private static final class Job {
+		final long id;
+		final Kind kind;
+		final String body;
+		volatile int attempts;
+
+		Job(long id, Kind kind, String body) {
+			this.id = id;
+			this.kind = kind;
+			this.body = body;
+		}
+
+		WriteAheadLog.Entry toEntry() {
+			return new WriteAheadLog.Entry(ENQUEUED, id, (kind.name() + '\n' + body).getBytes(StandardCharsets.UTF_8));
+		}
+
+		WriteAheadLog.Entry toRetryEntry() {
+			return new WriteAheadLog.Entry(RETRIED, id, ByteBuffer.allocate(Integer.BYTES).putInt(attempts).array());
+		}
+
+		static Job fromEntry(WriteAheadLog.Entry entry) {
+			var text = new String(entry.payload(), StandardCharsets.UTF_8);
+			int separator = text.indexOf('\n');
+			return new Job(entry.id(), Kind.valueOf(text.substring(0, separator)), text.substring(separator + 1));
+		}
+	}
+
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private Metrics metrics;
+
+	private final Map<Long, Job> pending = new ConcurrentHashMap<>();
+	private final AtomicReferenceArray<Function<String, ?>> handlers = new AtomicReferenceArray<>(Kind.values().length);
+	private final AtomicLong ids = new AtomicLong();
+	private final LongAdder succeeded = new LongAdder(), retried = new LongAdder(), failed = new LongAdder();
+	private WriteAheadLog journal;
+	private ScheduledExecutorService scheduler;
+
+	@PostConstruct
+	void start() throws IOException {
+		var params = configuration.outbound;
+		journal = new WriteAheadLog(params.journalDirectory(), (int) params.segmentSize().toBytes(), this::liveEntries);
+		for (var entry : journal.recover()) {
+			ids.accumulateAndGet(entry.id(), Math::max);
+			if (entry.type() == ENQUEUED) {
+				pending.put(entry.id(), Job.fromEntry(entry));
+			}
+			else if (entry.type() == RETRIED) {
+				var job = pending.get(entry.id());
+				if (job != null) {
+					job.attempts = ByteBuffer.wrap(entry.payload()).getInt();
+				}
+			}
+			else {
+				pending.remove(entry.id());
+			}
+		}
+		journal.start();
+
+		var threadCount = new AtomicInteger();
+		scheduler = Executors.newScheduledThreadPool(params.workers(), task -> {
+			var thread = new Thread(task, "outbound-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (!pending.isEmpty()) {
+			logger.info("Recovered "+pending.size()+" pending outbound jobs.");
+		}
+		// Give controllers time to register their handlers before replaying.
+		for (var job : pending.values()) {
+			schedule(job, RECOVERY_DELAY_MILLIS);
+		}
+
+		metrics.registerGauge("vonage_outbound_jobs_pending", "gauge",
+				"Outbound sends waiting to be retried.", () -> pending.size()
+		);
+		metrics.registerGauge("vonage_outbound_jobs_succeeded_total", "counter",
+				"Queued outbound sends that eventually succeeded.", succeeded::sum
+		);
+		metrics.registerGauge("vonage_outbound_jobs_retried_total", "counter",
+				"Retry attempts that failed and were rescheduled.", retried::sum
+		);
+		metrics.registerGauge("vonage_outbound_jobs_failed_total", "counter",
+				"Queued outbound sends abandoned after their last attempt.", failed::sum
+		);
+	}
+
+	@PreDestroy
+	void stop() throws IOException {
+		scheduler.shutdownNow();
+		journal.close();
+	}
+
+	private Collection<WriteAheadLog.Entry> liveEntries() {
+		return pending.values().stream()
+				.flatMap(job -> job.attempts > 0 ? Stream.of(job.toEntry(), job.toRetryEntry()) : Stream.of(job.toEntry()))
+				.toList();
+	}
+
+	/**
+	 * Whether the failure is worth retrying: throttling, server errors and I/O problems. JSON
+	 * (de)serialisation errors are I/O exceptions too, but retrying them would fail the same way.
+	 */
+	static boolean isRetryable(Throwable ex) {
+		for (var cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof VonageApiResponseException vex) {
+				int status = vex.getStatusCode();
+				return status == 429 || status >= 500;
+			}
+			if (cause instanceof JsonProcessingException) {
+				return false;
+			}
+			if (cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sets how jobs of the given kind are sent. The handler receives the parameters passed to
+	 * {@link #enqueue(Kind, Object)} and throws to signal failure.
+	 */
+	<T> void register(Kind kind, Class<T> type, Function<T, ?> handler) {
+		handlers.set(kind.ordinal(), body -> {
+			try {
+				return handler.apply(objectMapper.readValue(body, type));
+			}
+			catch (JsonProcessingException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+	}
+
+	/**
+	 * Durably records a send for retry and schedules its first attempt.
+	 *
+	 * @return The job ID.
+	 */
+	long enqueue(Kind kind, Object params) {
+		try {
+			var job = new Job(ids.incrementAndGet(), kind, objectMapper.writeValueAsString(params));
+			// Published from inside the append so a concurrent rollover copies the job or sees its record, not both.
+			journal.awaitDurable(journal.append(ENQUEUED, job.id, job.toEntry().payload(), () -> pending.put(job.id, job)));
+			schedule(job, configuration.outbound.initialBackoff().toMillis());
+			return job.id;
+		}
+		catch (JsonProcessingException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while journalling job.", ie);
+		}
+	}
+
+	private void schedule(Job job, long delayMillis) {
+		scheduler.schedule(() -> attempt(job), delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private long backoffMillis(int attempts) {
+		var params = configuration.outbound;
+		long cap = params.maxBackoff().toMillis(),
+				exponential = params.initialBackoff().toMillis() << Math.min(attempts, 20);
+		return ThreadLocalRandom.current().nextLong(Math.min(cap, Math.max(exponential, 1)) + 1);
+	}
+
+	private void attempt(Job job) {
+		var handler = handlers.get(job.kind.ordinal());
+		if (handler == null) {
+			schedule(job, RECOVERY_DELAY_MILLIS);
+			return;
+		}
+		try {
+			var result = handler.apply(job.body);
+			logger.info("Outbound "+job.kind+" job "+job.id+" succeeded: "+result);
+			succeeded.increment();
+			finish(job);
+		}
+		catch (Throwable ex) {
+			// Errors included: an escaped throwable would cancel the task and strand the job until restart.
+			if (ex instanceof RuntimeException && isRetryable(ex) && ++job.attempts < configuration.outbound.maxAttempts()) {
+				retried.increment();
+				// Not awaited: if this is lost in a crash the job gets one extra attempt.
+				var retry = job.toRetryEntry();
+				journal.append(retry.type(), job.id, retry.payload());
+				schedule(job, backoffMillis(job.attempts));
+			}
+			else {
+				logger.log(Level.WARNING, "Giving up on outbound "+job.kind+" job "+job.id, ex);
+				failed.increment();
+				finish(job);
+			}
+		}
+	}
+
+	private void finish(Job job) {
+		pending.remove(job.id);
+		// Not awaited: if this is lost in a crash the job is simply retried once more.
+		journal.append(FINISHED, job.id, new byte[0]);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.net.URI;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number Verification requests waiting for the operator to redirect back, keyed by the state
+ * token sent with each one. Tokens are single use and expire, and the store is size-capped so
+ * abandoned flows cannot grow it without bound. The time from starting a verification to its
+ * redirect is recorded as the operator round trip.
+ */
+final class PendingVerifications {
+	static final int LATENCY_SAMPLES = 512;
+	private static final int STATE_BYTES = 16;
+
+	private final SecureRandom random = new SecureRandom();
+	private final ExpiringStore<String, Pending> pending;
+	private final LatencyWindow roundTrips = new LatencyWindow(LATENCY_SAMPLES);
+	private final LongAdder started = new LongAdder(), unknown = new LongAdder();
+
+	record Pending(String msisdn, Instant startedAt, long startedNanos, URI redirectUrl) {}
+
+	/**
+	 * @param maxSize Most verifications kept at once; the least recently started are dropped.
+	 * @param ttl How long to wait for the redirect.
+	 */
+	PendingVerifications(int maxSize, Duration ttl) {
+		pending = new ExpiringStore<>(maxSize, ttl);
+	}
+
+	ExpiringStore<String, ?> store() {
+		return pending;
+	}
+
+	long startedCount() {
+		return started.sum();
+	}
+
+	long unknownCount() {
+		return unknown.sum();
+	}
+
+	/**
+	 * Generates a state token and remembers the verification under it.
+	 */
+	String start(String msisdn, URI redirectUrl) {
+		var bytes = new byte[STATE_BYTES];
+		random.nextBytes(bytes);
+		var state = HexFormat.of().formatHex(bytes);
+		pending.put(state, new Pending(msisdn, Instant.now(), System.nanoTime(), redirectUrl));
+		started.increment();
+		return state;
+	}
+
+	/**
+	 * Removes the verification started with the given state and records its round trip.
+	 *
+	 * @return The verification, or {@code null} if the state is unknown, expired or already used.
+	 */
+	Pending complete(String state) {
+		var verification = state != null ? pending.remove(state) : null;
+		if (verification == null) {
+			unknown.increment();
+			return null;
+		}
+		roundTrips.record(System.nanoTime() - verification.startedNanos());
+		return verification;
+	}
+
+	/**
+	 * Drops a verification that could not be started.
+	 */
+	void discard(String state) {
+		pending.remove(state);
+	}
+
+	LatencyWindow.Summary roundTrips() {
+		return roundTrips.summarise();
+	}
+}
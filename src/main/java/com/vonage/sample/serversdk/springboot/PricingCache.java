@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import com.vonage.client.account.AccountClient;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * SMS and voice pricing for every country, kept warm in the background. A single thread walks
+ * the country list periodically and reloads anything missing or due for refresh, one country at
+ * a time so that user requests sharing the Account API rate limit are never queued behind a
+ * long batch. Countries the API has no pricing for are skipped until their failure expires.
+ */
+@Component
+public class PricingCache {
+	static final List<String> COUNTRIES = List.of(Locale.getISOCountries());
+
+	private final Logger logger = Logger.getLogger("pricing");
+
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private AccountRateLimiter accountRateLimiter;
+
+	@Autowired
+	private Metrics metrics;
+
+	private final Map<String, Long> unavailableUntil = new ConcurrentHashMap<>();
+	private AsyncLoadingCache<String, CountryPricing> cache;
+	private ScheduledExecutorService scheduler;
+
+	record CountryPricing(String countryCode, String countryName, String dialingPrefix,
+						  String currency, BigDecimal sms, BigDecimal voice, Instant updatedAt) {}
+
+	@PostConstruct
+	void init() {
+		var params = configuration.pricing;
+		cache = new AsyncLoadingCache<>(country -> load(country, AccountRateLimiter.Priority.INTERACTIVE),
+				params.refreshAfter(), params.expireAfter(), COUNTRIES.size()
+		);
+		scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			var thread = new Thread(task, "pricing-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::refreshDue,
+				params.warmupDelay().toMillis(), params.sweepInterval().toMillis(), TimeUnit.MILLISECONDS
+		);
+		metrics.registerGauge("vonage_pricing_countries_cached", "gauge",
+				"Countries with cached pricing.", () -> cache.store().size()
+		);
+		metrics.registerGauge("vonage_pricing_loads_total", "counter",
+				"Pricing loads started, including refreshes.", cache::loadCount
+		);
+		metrics.registerGauge("vonage_pricing_load_failures_total", "counter",
+				"Pricing loads that failed.", cache::loadFailureCount
+		);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	private AccountClient getAccountClient() {
+		return configuration.vonageClient.getAccountClient();
+	}
+
+	private CompletableFuture<CountryPricing> load(String country, AccountRateLimiter.Priority priority) {
+		var sms = accountRateLimiter.submit(priority, Metrics.ApiClient.ACCOUNT, () -> getAccountClient().getSmsPrice(country));
+		var voice = accountRateLimiter.submit(priority, Metrics.ApiClient.ACCOUNT, () -> getAccountClient().getVoicePrice(country));
+		return sms.thenCombine(voice, (s, v) -> new CountryPricing(
+				country, s.getCountryName(), s.getDialingPrefix(), s.getCurrency(),
+				s.getDefaultPrice(), v.getDefaultPrice(), Instant.now()
+		));
+	}
+
+	/**
+	 * Returns the country's pricing from memory, loading it first if it is not cached.
+	 */
+	CompletableFuture<CountryPricing> get(String country) {
+		return cache.get(country.toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * Returns the cached pricing of every country, in no particular order.
+	 */
+	List<CountryPricing> snapshot() {
+		var result = new ArrayList<CountryPricing>(COUNTRIES.size());
+		cache.forEachValue((country, pricing) -> result.add(pricing));
+		return result;
+	}
+
+	private void refreshDue() {
+		for (var country : COUNTRIES) {
+			if (Thread.currentThread().isInterrupted()) return;
+			var skipUntil = unavailableUntil.get(country);
+			if (skipUntil != null && System.currentTimeMillis() < skipUntil) continue;
+			if (!cache.needsRefresh(country)) continue;
+			try {
+				cache.refresh(country, c -> load(c, AccountRateLimiter.Priority.BACKGROUND)).join();
+				unavailableUntil.remove(country);
+			}
+			catch (CompletionException ex) {
+				if (OutboundJobQueue.isRetryable(ex)) {
+					logger.log(Level.FINE, "Pricing refresh for "+country+" will be retried", ex.getCause());
+				}
+				else {
+					logger.log(Level.FINE, "No pricing for "+country, ex.getCause());
+					unavailableUntil.put(country,
+							System.currentTimeMillis() + configuration.pricing.expireAfter().toMillis()
+					);
+				}
+			}
+			catch (RuntimeException ex) {
+				logger.log(Level.WARNING, "Pricing refresh failed for "+country, ex);
+			}
+		}
+	}
+}
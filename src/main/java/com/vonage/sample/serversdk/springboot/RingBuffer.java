@@ -0,0 +1,162 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded lock-free multi-producer, multi-consumer queue. Each slot carries a sequence number
+ * that tells producers and consumers whether it is free for the current lap, so neither side
+ * needs a lock. What happens when the buffer is full is decided by its {@link Overflow} policy.
+ *
+ * @param <E> The element type.
+ */
+final class RingBuffer<E> {
+
+	enum Overflow {
+		/**
+		 * Discard the element being added.
+		 */
+		DROP_NEWEST,
+
+		/**
+		 * Discard the oldest element to make room.
+		 */
+		OVERWRITE_OLDEST
+	}
+
+	private final AtomicReferenceArray<E> elements;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+	private final LongAdder dropped = new LongAdder();
+	private final Overflow overflow;
+	private final int mask;
+
+	/**
+	 * @param capacity Minimum capacity; rounded up to a power of two.
+	 * @param overflow Policy to apply when adding to a full buffer.
+	 */
+	RingBuffer(int capacity, Overflow overflow) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("Capacity must be at least 2.");
+		}
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		elements = new AtomicReferenceArray<>(size);
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+		this.overflow = overflow;
+	}
+
+	/**
+	 * Adds the element if there is room.
+	 *
+	 * @return {@code false} if the buffer was full.
+	 */
+	boolean offer(E element) {
+		long pos = tail.get();
+		int index;
+		for (;;) {
+			index = (int) pos & mask;
+			long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) break;
+				pos = tail.get();
+			}
+			else if (diff < 0) {
+				return false;
+			}
+			else {
+				pos = tail.get();
+			}
+		}
+		elements.set(index, element);
+		sequences.set(index, pos + 1);
+		return true;
+	}
+
+	/**
+	 * Adds the element, applying the overflow policy if the buffer is full.
+	 */
+	void add(E element) {
+		while (!offer(element)) {
+			dropped.increment();
+			if (overflow == Overflow.DROP_NEWEST) return;
+			poll();
+		}
+	}
+
+	/**
+	 * Removes and returns the oldest element, or {@code null} if the buffer is empty.
+	 */
+	E poll() {
+		long pos = head.get();
+		int index;
+		for (;;) {
+			index = (int) pos & mask;
+			long diff = sequences.get(index) - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) break;
+				pos = head.get();
+			}
+			else if (diff < 0) {
+				return null;
+			}
+			else {
+				pos = head.get();
+			}
+		}
+		var element = elements.getAndSet(index, null);
+		sequences.set(index, pos + mask + 1);
+		return element;
+	}
+
+	/**
+	 * Moves up to {@code max} of the oldest elements into the given collection.
+	 *
+	 * @return The number of elements moved.
+	 */
+	int drainTo(Collection<? super E> target, int max) {
+		int count = 0;
+		E element;
+		while (count < max && (element = poll()) != null) {
+			target.add(element);
+			count++;
+		}
+		return count;
+	}
+
+	int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, mask + 1));
+	}
+
+	long droppedCount() {
+		return dropped.sum();
+	}
+}
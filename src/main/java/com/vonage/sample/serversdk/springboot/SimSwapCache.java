@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recent SIM swap dates by phone number. Numbers with no recorded swap are cached too, so
+ * screening the same list again does not repeat the lookups. Entries expire quickly because a
+ * swap is exactly the event callers are watching for. Failed lookups are not cached.
+ */
+@Component
+public class SimSwapCache {
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private Metrics metrics;
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+	private AsyncLoadingCache<String, SwapDate> cache;
+	private ExecutorService executor;
+
+	/**
+	 * @param swappedAt When the SIM was last swapped, or {@code null} if no swap is recorded.
+	 * @param checkedAt When the API was asked.
+	 */
+	record SwapDate(Instant swappedAt, Instant checkedAt) {}
+
+	@PostConstruct
+	void init() {
+		var params = configuration.simSwap;
+		executor = Executors.newFixedThreadPool(params.parallelism(), task -> {
+			var thread = new Thread(task, "simswap-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		cache = new AsyncLoadingCache<>(msisdn -> CompletableFuture.supplyAsync(() -> new SwapDate(
+				metrics.timeApiCall(Metrics.ApiClient.SIM_SWAP, () -> configuration.vonageClient
+						.getSimSwapClient().retrieveSimSwapDate(msisdn)
+				), Instant.now()
+		), executor), params.ttl(), params.ttl(), params.maxEntries());
+		metrics.registerGauge("vonage_sim_swap_cached", "gauge",
+				"SIM swap results held in the cache.", () -> cache.store().size()
+		);
+		metrics.registerGauge("vonage_sim_swap_loads_total", "counter",
+				"SIM swap API calls made to fill the cache.", cache::loadCount
+		);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	static String normalise(String msisdn) {
+		var digits = msisdn.replaceAll("\\D", "");
+		return '+' + digits;
+	}
+
+	CompletableFuture<SwapDate> get(String msisdn) {
+		return cache.get(normalise(msisdn));
+	}
+}
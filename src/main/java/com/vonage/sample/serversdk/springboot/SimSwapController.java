@@ -22,10 +22,28 @@
 package com.vonage.sample.serversdk.springboot;
 
 import com.vonage.client.camara.simswap.SimSwapClient;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 public final class SimSwapController extends VonageController {
@@ -34,6 +52,15 @@ public final class SimSwapController extends VonageController {
             SIM_SWAP_PARAMS_NAME = "simSwapParams",
             SIM_SWAP_URL = "/simSwap";
 
+    @Autowired
+    private SimSwapCache simSwapCache;
+
+    @Autowired
+    private FanOutStreamer fanOutStreamer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     private SimSwapClient getSimSwapClient() {
         return getVonageClient().getSimSwapClient();
     }
@@ -49,12 +76,115 @@ public final class SimSwapController extends VonageController {
     @PostMapping(SIM_SWAP_URL)
     public String simSwapPost(@ModelAttribute SimSwapParams simSwapParams, Model model) {
         if (simSwapParams.msisdn != null) {
-            simSwapParams.date = getSimSwapClient().retrieveSimSwapDate(simSwapParams.msisdn);
+            simSwapParams.date = timeApiCall(Metrics.ApiClient.SIM_SWAP, () ->
+                    getSimSwapClient().retrieveSimSwapDate(simSwapParams.msisdn)
+            );
         }
         model.addAttribute(SIM_SWAP_PARAMS_NAME, simSwapParams);
         return SIM_SWAP_TEMPLATE_NAME;
     }
 
+    /**
+     * Checks many numbers, given as a JSON array of {@code {"msisdn"}} objects, and streams each
+     * result as a line of JSON as soon as it is available. A number counts as swapped if its SIM
+     * changed in the last {@code maxAge} hours.
+     */
+    @PostMapping(value = SIM_SWAP_URL + "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> simSwapBatchJson(InputStream body,
+            @RequestParam(defaultValue = "240") int maxAge) throws IOException {
+        validateMaxAge(maxAge);
+        Iterator<SimSwapQuery> queries = objectMapper.readerFor(SimSwapQuery.class).readValues(body);
+        return simSwapBatch(queries, maxAge);
+    }
+
+    /**
+     * As above, with one number per line.
+     */
+    @PostMapping(value = SIM_SWAP_URL + "/batch", consumes = "text/csv")
+    public ResponseEntity<ResponseBodyEmitter> simSwapBatchCsv(InputStream body,
+            @RequestParam(defaultValue = "240") int maxAge) {
+        validateMaxAge(maxAge);
+        var reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        var queries = reader.lines()
+                .map(line -> line.split(",", 2)[0].trim())
+                .filter(msisdn -> !msisdn.isEmpty() && !msisdn.startsWith("msisdn"))
+                .map(SimSwapQuery::new)
+                .iterator();
+        return simSwapBatch(queries, maxAge);
+    }
+
+    record SimSwapQuery(String msisdn) {}
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record SimSwapResult(String msisdn, Boolean swapped, Instant swappedAt, Instant checkedAt, String error) {}
+
+    private ResponseEntity<ResponseBodyEmitter> simSwapBatch(Iterator<SimSwapQuery> queries, int maxAge) {
+        return fanOutStreamer.stream(queries, getConfiguration().simSwap.parallelism(), query -> {
+            try {
+                var result = simSwapCache.get(query.msisdn()).join();
+                var since = Instant.now().minus(Duration.ofHours(maxAge));
+                return new SimSwapResult(query.msisdn(), result.swappedAt() != null && result.swappedAt().isAfter(since),
+                        result.swappedAt(), result.checkedAt(), null
+                );
+            }
+            catch (CompletionException ex) {
+                var cause = ex.getCause() != null ? ex.getCause() : ex;
+                return new SimSwapResult(query.msisdn(), null, null, null, cause.getMessage());
+            }
+        });
+    }
+
+    enum Verdict {
+        /**
+         * The SIM was swapped within the requested period.
+         */
+        HIGH_RISK,
+
+        /**
+         * No swap within the requested period.
+         */
+        LOW_RISK,
+
+        /**
+         * No answer within the caller's time budget, or the lookup failed.
+         */
+        UNKNOWN
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record SimSwapCheck(String msisdn, Verdict verdict, Integer maxAgeHours, Instant swappedAt,
+                        Instant checkedAt, boolean fromCache, String error) {}
+
+    /**
+     * Returns a risk verdict for the number: whether its SIM was swapped in the last
+     * {@code maxAge} hours. Recent answers are served from memory and concurrent checks of the same
+     * number share one API call. Otherwise the lookup is waited on for at most {@code timeout}
+     * milliseconds; if it is still running the verdict is {@code UNKNOWN}, and the result will be
+     * cached for the next check.
+     */
+    @ResponseBody
+    @GetMapping(value = SIM_SWAP_URL + "/check", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<SimSwapCheck> simSwapCheck(@RequestParam String msisdn,
+            @RequestParam(defaultValue = "240") int maxAge, @RequestParam(defaultValue = "0") long timeout) {
+        validateMaxAge(maxAge);
+        var lookup = simSwapCache.get(msisdn);
+        boolean fromCache = lookup.isDone() && !lookup.isCompletedExceptionally();
+        return lookup.copy().completeOnTimeout(null, Math.max(timeout, 0), TimeUnit.MILLISECONDS).handle((result, ex) -> {
+            if (ex != null) {
+                var cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                return new SimSwapCheck(msisdn, Verdict.UNKNOWN, maxAge, null, null, fromCache, cause.getMessage());
+            }
+            if (result == null) {
+                return new SimSwapCheck(msisdn, Verdict.UNKNOWN, maxAge, null, null, false, null);
+            }
+            var since = Instant.now().minus(Duration.ofHours(maxAge));
+            var swapped = result.swappedAt() != null && result.swappedAt().isAfter(since);
+            return new SimSwapCheck(msisdn, swapped ? Verdict.HIGH_RISK : Verdict.LOW_RISK, maxAge,
+                    result.swappedAt(), result.checkedAt(), fromCache, null
+            );
+        });
+    }
+
     public static class SimSwapParams {
         private String msisdn;
         private Instant date;
@@ -75,4 +205,10 @@ public final class SimSwapController extends VonageController {
             this.date = date;
         }
     }
+
+    private static void validateMaxAge(int maxAge) {
+        if (maxAge < 1 || maxAge > 2400) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "maxAge must be between 1 and 2400 hours.");
+        }
+    }
 }
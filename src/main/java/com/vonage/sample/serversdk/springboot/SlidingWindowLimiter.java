@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-key request limit over a sliding window. Each key keeps only the counts for the current
+ * and previous fixed windows, and weights the previous count by how much of it still overlaps
+ * the sliding window, so memory per key is constant. Keys idle for two windows expire.
+ *
+ * @param <K> The key type, such as a phone number or client address.
+ */
+final class SlidingWindowLimiter<K> {
+	private final ExpiringStore<K, Window> windows;
+	private final long windowNanos;
+	private final int limit;
+	private final LongAdder rejected = new LongAdder();
+
+	private static final class Window {
+		final long start;
+		final int previousCount;
+		int count;
+
+		Window(long start, int previousCount) {
+			this.start = start;
+			this.previousCount = previousCount;
+		}
+	}
+
+	/**
+	 * @param limit Maximum requests per key within any window-length period.
+	 * @param window Length of the sliding window.
+	 * @param maxKeys Maximum number of keys tracked at once; least recently used keys are dropped.
+	 */
+	SlidingWindowLimiter(int limit, Duration window, int maxKeys) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Limit must be positive.");
+		}
+		this.limit = limit;
+		windowNanos = window.toNanos();
+		windows = new ExpiringStore<>(maxKeys, window.multipliedBy(2));
+	}
+
+	ExpiringStore<K, ?> store() {
+		return windows;
+	}
+
+	long rejectedCount() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Counts a request for the key if it is within the limit.
+	 *
+	 * @return {@code false} if the request should be rejected.
+	 */
+	boolean tryAcquire(K key) {
+		var allowed = new boolean[1];
+		windows.compute(key, (k, existing) -> {
+			long now = System.nanoTime();
+			var window = existing;
+			if (window == null || now - window.start >= 2 * windowNanos) {
+				window = new Window(now, 0);
+			}
+			else if (now - window.start >= windowNanos) {
+				// A new instance also refreshes the key's expiry.
+				window = new Window(window.start + windowNanos, window.count);
+			}
+			double overlap = 1 - (double) (now - window.start) / windowNanos;
+			allowed[0] = window.previousCount * overlap + window.count < limit;
+			if (allowed[0]) {
+				window.count++;
+			}
+			return window;
+		});
+		if (!allowed[0]) {
+			rejected.increment();
+		}
+		return allowed[0];
+	}
+
+	/**
+	 * Gives back a request counted by {@link #tryAcquire(Object)}, for when a later check
+	 * rejected it after all.
+	 */
+	void release(K key) {
+		windows.compute(key, (k, window) -> {
+			if (window != null && window.count > 0) {
+				window.count--;
+			}
+			return window;
+		});
+	}
+}
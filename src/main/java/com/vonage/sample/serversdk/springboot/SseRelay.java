@@ -0,0 +1,269 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+
+/**
+ * Pushes values published to one or more {@link LongPollHub} or {@link EventTimeline} keys to a
+ * browser as Server-Sent Events over a single connection. Each source re-registers a waiter as
+ * soon as its previous one completes, so values published in between are not lost. The stream ends
+ * when every source has seen its final value or the timeout elapses, with an {@value #END_EVENT}
+ * event so that the browser's {@code EventSource} knows not to reconnect.
+ * <p>
+ * Values are written to the client on a shared relay pool rather than on the thread that
+ * published them, so a slow client never holds up webhook processing. Each stream drains its own
+ * outbox with at most one pool thread at a time; since a source only waits for its next value
+ * once the previous one is written, the outbox never holds more than one item per source. A send
+ * that stalls for longer than {@value #SEND_TIMEOUT_MILLIS}ms is interrupted and the stream closed,
+ * and a stream that finds every relay thread busy fails rather than queueing behind stalled ones.
+ */
+final class SseRelay {
+	static final String END_EVENT = "end";
+	private static final int RELAY_THREADS = 256;
+	private static final long SEND_TIMEOUT_MILLIS = 10_000;
+	private static final ExecutorService RELAY_EXECUTOR = newRelayExecutor();
+	private static final ScheduledExecutorService SEND_WATCHDOG = Executors.newSingleThreadScheduledExecutor(task -> {
+		var thread = new Thread(task, "sse-relay-watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final SseEmitter emitter;
+	private final long deadline;
+	private final Set<CompletableFuture<?>> outstanding = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger openSources = new AtomicInteger(1);
+	private final AtomicBoolean closed = new AtomicBoolean(), draining = new AtomicBoolean();
+	private final Queue<Runnable> outbox = new ConcurrentLinkedQueue<>();
+	private Thread writer;
+
+	private static ExecutorService newRelayExecutor() {
+		var threadCount = new AtomicInteger();
+		// No queue: a stream writes on its own thread or not at all, so it never waits behind a stalled one.
+		return new ThreadPoolExecutor(0, RELAY_THREADS, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<>(), task -> {
+					var thread = new Thread(task, "sse-relay-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+		);
+	}
+
+	SseRelay(Duration timeout) {
+		deadline = System.nanoTime() + timeout.toNanos();
+		// Leave a margin so the stream is completed by us rather than by the container timing out.
+		emitter = new SseEmitter(timeout.plusSeconds(5).toMillis());
+		emitter.onCompletion(this::close);
+		emitter.onTimeout(this::close);
+		emitter.onError(ex -> close());
+	}
+
+	/**
+	 * Adds a source to the stream.
+	 *
+	 * @param eventName Name of the SSE event carrying values from this source.
+	 * @param format Converts each value to the event data.
+	 * @param isFinal Whether a value is the last one this source will produce.
+	 * @param endsStream Whether this source's final value ends the whole stream, rather than
+	 * waiting for the other sources to finish too.
+	 */
+	<K, V> SseRelay relay(LongPollHub<K, V> hub, K key, String eventName,
+						  Function<V, String> format, Predicate<V> isFinal, boolean endsStream) {
+		openSources.incrementAndGet();
+		awaitNext(remainingMillis -> hub.await(key, remainingMillis), value -> {
+			if (!send(eventName, null, format.apply(value))) return false;
+			if (!isFinal.test(value)) return true;
+			if (endsStream) {
+				end();
+			}
+			return false;
+		});
+		return this;
+	}
+
+	/**
+	 * Adds every event of a timeline after the given sequence number to the stream. Each SSE event
+	 * carries its sequence number as the event ID, so a reconnecting client can resume from it.
+	 */
+	<K, V> SseRelay relay(EventTimeline<K, V> timeline, K key, long after, String eventName,
+						  Function<V, String> format, Predicate<V> isFinal) {
+		openSources.incrementAndGet();
+		var cursor = new AtomicLong(after);
+		awaitNext(remainingMillis -> timeline.read(key, cursor.get(), remainingMillis), events -> {
+			for (var event : events) {
+				cursor.set(event.sequence());
+				if (!send(eventName, event.sequence(), format.apply(event.value())) || isFinal.test(event.value())) {
+					return false;
+				}
+			}
+			return !events.isEmpty();
+		});
+		return this;
+	}
+
+	/**
+	 * Returns the emitter to hand back from the controller. No sources can be added after this.
+	 */
+	SseEmitter emitter() {
+		sourceFinished();
+		return emitter;
+	}
+
+	/**
+	 * Repeatedly waits for the next value from a source until the deadline passes, the client
+	 * goes away or the handler returns {@code false}.
+	 */
+	private <T> void awaitNext(LongFunction<CompletableFuture<T>> next, Predicate<T> handler) {
+		long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+		if (closed.get() || remainingMillis <= 0) {
+			sourceFinished();
+			return;
+		}
+		var waiter = next.apply(remainingMillis);
+		outstanding.add(waiter);
+		// Posted, so sends never run on the publishing thread and buffered values don't recurse.
+		waiter.whenComplete((value, ex) -> post(() -> {
+			outstanding.remove(waiter);
+			if (value != null && handler.test(value)) {
+				awaitNext(next, handler);
+			}
+			else {
+				sourceFinished();
+			}
+		}));
+		if (closed.get()) {
+			waiter.cancel(false);
+		}
+	}
+
+	private void post(Runnable task) {
+		outbox.add(task);
+		scheduleDrain();
+	}
+
+	private void scheduleDrain() {
+		if (!draining.compareAndSet(false, true)) return;
+		try {
+			RELAY_EXECUTOR.execute(this::drain);
+		}
+		catch (RejectedExecutionException ex) {
+			draining.set(false);
+			close();
+			emitter.completeWithError(new IOException("Every event relay thread is busy."));
+		}
+	}
+
+	private void drain() {
+		try {
+			Runnable task;
+			while ((task = outbox.poll()) != null) {
+				task.run();
+			}
+		}
+		finally {
+			draining.set(false);
+			// Clears an interrupt from a send timeout so it doesn't leak into the next task.
+			Thread.interrupted();
+		}
+		if (!outbox.isEmpty()) {
+			scheduleDrain();
+		}
+	}
+
+	private boolean send(String eventName, Long id, String data) {
+		var timeout = SEND_WATCHDOG.schedule(this::sendTimedOut, SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		synchronized (this) {
+			writer = Thread.currentThread();
+		}
+		try {
+			var event = SseEmitter.event().name(eventName).data(data);
+			if (id != null) {
+				event.id(id.toString());
+			}
+			emitter.send(event);
+			return true;
+		}
+		catch (IOException | IllegalStateException ex) {
+			close();
+			return false;
+		}
+		finally {
+			synchronized (this) {
+				writer = null;
+			}
+			timeout.cancel(false);
+		}
+	}
+
+	/**
+	 * Unblocks a write to a client that has stopped reading. The failed send then closes the stream
+	 * and the container reports the error.
+	 */
+	private synchronized void sendTimedOut() {
+		if (writer != null) {
+			close();
+			writer.interrupt();
+		}
+	}
+
+	private void sourceFinished() {
+		if (openSources.decrementAndGet() == 0) {
+			end();
+		}
+	}
+
+	private void end() {
+		if (!closed.get() && send(END_EVENT, null, "")) {
+			emitter.complete();
+		}
+		close();
+	}
+
+	/**
+	 * Stops listening once the client has gone, so pending values stay in the hub for other readers.
+	 */
+	private void close() {
+		if (closed.compareAndSet(false, true)) {
+			outstanding.forEach(waiter -> waiter.cancel(false));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Callers that find the bucket empty reserve a future token and
+ * schedule their work for when it is due, so concurrent callers are served in the order they arrived.
+ */
+final class TokenBucket {
+	private final double permitsPerNano, capacity;
+	private double available;
+	private long lastRefill;
+
+	/**
+	 * @param permitsPerSecond The sustained rate.
+	 * @param burst The maximum number of permits that can be taken at once after idling.
+	 */
+	TokenBucket(double permitsPerSecond, double burst) {
+		if (permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("Rate must be positive and burst at least 1.");
+		}
+		permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		capacity = burst;
+		available = burst;
+		lastRefill = System.nanoTime();
+	}
+
+	private void refill(long now) {
+		available = Math.min(capacity, available + (now - lastRefill) * permitsPerNano);
+		lastRefill = now;
+	}
+
+	/**
+	 * Takes a permit, possibly going into debt, and returns how long the caller must wait before using it.
+	 */
+	synchronized long reserve() {
+		refill(System.nanoTime());
+		available -= 1;
+		return available >= 0 ? 0 : (long) Math.ceil(-available / permitsPerNano);
+	}
+
+	/**
+	 * Like {@link #reserve()}, but only if the wait would be at most {@code maxWaitNanos}.
+	 *
+	 * @return The wait, or {@code -1} if it would be longer and no permit was taken.
+	 */
+	synchronized long reserve(long maxWaitNanos) {
+		refill(System.nanoTime());
+		long waitNanos = available >= 1 ? 0 : (long) Math.ceil((1 - available) / permitsPerNano);
+		if (waitNanos > maxWaitNanos) return -1;
+		available -= 1;
+		return waitNanos;
+	}
+
+	synchronized boolean tryAcquire() {
+		return tryAcquire(0);
+	}
+
+	/**
+	 * Takes a permit only if at least {@code keep} more would remain available afterwards.
+	 */
+	synchronized boolean tryAcquire(double keep) {
+		refill(System.nanoTime());
+		if (available < 1 + keep) return false;
+		available -= 1;
+		return true;
+	}
+}
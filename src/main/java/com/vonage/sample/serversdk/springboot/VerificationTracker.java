@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.vonage.client.verify2.Channel;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers when and over which channel each verification was sent, the status callbacks
+ * received for it, and how long each channel took to complete. Completion latencies are kept in
+ * a fixed window of recent samples per channel, so percentiles follow current conditions.
+ */
+final class VerificationTracker {
+	static final int MAX_CALLBACKS_PER_REQUEST = 32, LATENCY_SAMPLES = 512;
+
+	private final ExpiringStore<UUID, Track> tracks;
+	private final Map<Channel, LatencyWindow> latencies = new EnumMap<>(Channel.class);
+
+	record Callback(Instant receivedAt, String status, @JsonRawValue String json) {}
+
+	record History(Channel channel, Instant submittedAt, Duration timeToComplete, List<Callback> callbacks) {}
+
+	record ChannelLatency(Channel channel, long completed, double meanSeconds,
+						  double p50Seconds, double p95Seconds, double maxSeconds) {}
+
+	private static final class Track {
+		final Deque<Callback> callbacks = new ArrayDeque<>();
+		Channel channel;
+		Instant submittedAt;
+		long submittedNanos;
+		Duration timeToComplete;
+	}
+
+	VerificationTracker(int maxRequests, Duration retention) {
+		tracks = new ExpiringStore<>(maxRequests, retention);
+		for (var channel : Channel.values()) {
+			latencies.put(channel, new LatencyWindow(LATENCY_SAMPLES));
+		}
+	}
+
+	ExpiringStore<UUID, ?> store() {
+		return tracks;
+	}
+
+	void submitted(UUID requestId, Channel channel) {
+		tracks.compute(requestId, (k, existing) -> {
+			var track = existing != null ? existing : new Track();
+			track.channel = channel;
+			track.submittedAt = Instant.now();
+			track.submittedNanos = System.nanoTime();
+			return track;
+		});
+	}
+
+	void callback(UUID requestId, String status, String json) {
+		var callback = new Callback(Instant.now(), status, json);
+		tracks.compute(requestId, (k, existing) -> {
+			var track = existing != null ? existing : new Track();
+			if (track.callbacks.size() == MAX_CALLBACKS_PER_REQUEST) {
+				track.callbacks.removeFirst();
+			}
+			track.callbacks.addLast(callback);
+			return track;
+		});
+	}
+
+	/**
+	 * Records the time to complete for the request's channel. Only the first completion of a
+	 * request we sent ourselves is counted.
+	 */
+	void completed(UUID requestId) {
+		var elapsed = new long[]{-1};
+		var channel = new Channel[1];
+		tracks.compute(requestId, (k, track) -> {
+			if (track != null && track.channel != null && track.timeToComplete == null) {
+				elapsed[0] = System.nanoTime() - track.submittedNanos;
+				track.timeToComplete = Duration.ofNanos(elapsed[0]);
+				channel[0] = track.channel;
+			}
+			return track;
+		});
+		if (elapsed[0] >= 0) {
+			latencies.get(channel[0]).record(elapsed[0]);
+		}
+	}
+
+	History history(UUID requestId) {
+		var history = new History[1];
+		tracks.compute(requestId, (k, track) -> {
+			if (track != null) {
+				history[0] = new History(track.channel, track.submittedAt,
+						track.timeToComplete, new ArrayList<>(track.callbacks)
+				);
+			}
+			return track;
+		});
+		return history[0];
+	}
+
+	List<ChannelLatency> latencies() {
+		var result = new ArrayList<ChannelLatency>(latencies.size());
+		latencies.forEach((channel, window) -> {
+			var summary = window.summarise();
+			result.add(new ChannelLatency(channel, summary.completed(), summary.meanSeconds(),
+					summary.p50Seconds(), summary.p95Seconds(), summary.maxSeconds()
+			));
+		});
+		return result;
+	}
+}
@@ -23,19 +23,59 @@ package com.vonage.sample.serversdk.springboot;
 
 import com.vonage.client.messages.sms.SmsTextRequest;
 import com.vonage.client.verify2.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 public class VerifyController extends VonageController {
 	static final String
 			VERIFY_START_TEMPLATE = "verify_start",
 			VERIFY_RESULT_TEMPLATE = "verify_result";
-
-	private final Map<UUID, String> successfulVerifications = new LinkedHashMap<>();
+	static final int MAX_THROTTLED_KEYS = 100_000;
+
+	static final Set<VerificationStatus> FAILED_STATUSES = EnumSet.of(
+			VerificationStatus.FAILED, VerificationStatus.EXPIRED, VerificationStatus.USER_REJECTED
+	);
+
+	private CompletionRegistry<UUID, VerificationOutcome> completions;
+	private VerificationTracker tracker;
+	private SlidingWindowLimiter<String> destinationLimiter, clientLimiter;
+
+	record VerificationOutcome(boolean successful, String code, String reason) {}
+
+	@PostConstruct
+	void init() {
+		var retention = getConfiguration().verify.completionRetention();
+		completions = new CompletionRegistry<>(retention);
+		tracker = new VerificationTracker(CompletionRegistry.DEFAULT_MAX_SIZE, retention);
+		var params = getConfiguration().verify;
+		destinationLimiter = new SlidingWindowLimiter<>(
+				params.maxPerDestination(), params.throttleWindow(), MAX_THROTTLED_KEYS
+		);
+		clientLimiter = new SlidingWindowLimiter<>(params.maxPerClient(), params.throttleWindow(), MAX_THROTTLED_KEYS);
+		getMetrics().registerGauge("vonage_verify_throttled_destination_total", "counter",
+				"Verification requests rejected for exceeding the per-destination limit.", destinationLimiter::rejectedCount
+		);
+		getMetrics().registerGauge("vonage_verify_throttled_client_total", "counter",
+				"Verification requests rejected for exceeding the per-client limit.", clientLimiter::rejectedCount
+		);
+		getMetrics().registerGauge("vonage_verify_completions_tracked", "gauge",
+				"Verification requests with a completion handle.", () -> completions.store().size()
+		);
+		getMetrics().registerGauge("vonage_verify_histories_tracked", "gauge",
+				"Verification requests with a retained status history.", () -> tracker.store().size()
+		);
+		getWebhookPipeline().register(Metrics.WebhookType.VERIFY_STATUS, this::processVerificationCallback);
+	}
 
 	protected Verify2Client getVerifyClient() {
 		return getVonageClient().getVerify2Client();
@@ -55,7 +95,8 @@ public class VerifyController extends VonageController {
 	}
 
 	@PostMapping("/postVerificationRequest")
-	public String postVerificationRequest(@ModelAttribute VerifyParams verifyParams, Model model) {
+	public String postVerificationRequest(@ModelAttribute VerifyParams verifyParams, Model model,
+										  HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
 		try {
 			var builder = VerificationRequest.builder().brand(verifyParams.brand);
 			String toNumber = verifyParams.toNumber, toEmail = verifyParams.toEmail,
@@ -81,6 +122,19 @@ public class VerifyController extends VonageController {
 				}
 			}
 			else {
+				var destination = channel == Channel.EMAIL ? toEmail.trim().toLowerCase() : toNumber.replaceAll("\\D", "");
+				// Tomcat's RemoteIpValve only takes X-Forwarded-For from server.tomcat.remoteip.internal-proxies.
+				var client = httpRequest.getRemoteAddr();
+				boolean clientAllowed = clientLimiter.tryAcquire(client);
+				if (!clientAllowed || !destinationLimiter.tryAcquire(destination)) {
+					if (clientAllowed) {
+						// Rejected for the destination only, so this request shouldn't count against the client.
+						clientLimiter.release(client);
+					}
+					httpResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+					model.addAttribute("message", "Too many verification requests. Please try again later.");
+					return ERROR_TEMPLATE;
+				}
 				builder.addWorkflow(switch (channel) {
 					case EMAIL -> new EmailWorkflow(toEmail, fromEmail);
 					case SMS -> SmsWorkflow.builder(toNumber).from(fromNumber).build();
@@ -97,16 +151,26 @@ public class VerifyController extends VonageController {
 				}
 				var request = builder.build();
 				assert request.isCodeless() == codeless;
-				var response = getVerifyClient().sendVerification(request);
+				VerificationResponse response;
+				try {
+					response = timeApiCall(Metrics.ApiClient.VERIFY2, () -> getVerifyClient().sendVerification(request));
+				}
+				catch (RuntimeException ex) {
+					// Nothing was sent, so the attempt shouldn't count against the client.
+					clientLimiter.release(client);
+					throw ex;
+				}
 				verifyParams.requestId = response.getRequestId();
 				verifyParams.checkUrl = response.getCheckUrl();
+				tracker.submitted(verifyParams.requestId, channel);
 				if (channel == Channel.SILENT_AUTH) {
-					var messageResponse = getVonageClient().getMessagesClient().sendMessage(
-							SmsTextRequest.builder()
-								.to(toNumber)
-								.from(request.getBrand())
-								.text("Follow this on mobile data: "+response.getCheckUrl())
-								.build()
+					var smsRequest = SmsTextRequest.builder()
+							.to(toNumber)
+							.from(request.getBrand())
+							.text("Follow this on mobile data: "+response.getCheckUrl())
+							.build();
+					var messageResponse = timeApiCall(Metrics.ApiClient.MESSAGES, () ->
+							getMessagesClient(false).sendMessage(smsRequest)
 					);
 					assert messageResponse != null && messageResponse.getMessageUuid() != null;
 				}
@@ -120,48 +184,52 @@ public class VerifyController extends VonageController {
 	}
 
 	@PostMapping("/checkVerificationRequest")
-	public String checkVerificationRequest(@ModelAttribute VerifyParams verifyParams, Model model) {
+	public CompletableFuture<String> checkVerificationRequest(@ModelAttribute VerifyParams verifyParams, Model model) {
 		try {
-			String result = "Code matched. Verification successful.";
 			if (verifyParams.codeless || (verifyParams.checkUrl != null && !verifyParams.checkUrl.toString().isEmpty()) || verifyParams.userCode == null) {
-				String code = successfulVerifications.remove(verifyParams.requestId);
-				if (code == null) synchronized (successfulVerifications) {
-					try {
-						successfulVerifications.wait(2000);
-						if ((code = successfulVerifications.remove(verifyParams.requestId)) == null) {
-							result = "Verification failed.";
-						}
+				var timeout = getConfiguration().verify.completionTimeout();
+				return completions.await(verifyParams.requestId, timeout).thenApply(outcome -> {
+					if (outcome == null) {
+						return verifyResultTemplate(model, verifyParams, "Verification not completed yet.");
 					}
-					catch (InterruptedException ie) {
-						// Continue
+					verifyParams.userCode = outcome.code();
+					if (!outcome.successful()) {
+						return verifyResultTemplate(model, verifyParams, "Verification failed: "+outcome.reason());
 					}
-				}
-				verifyParams.userCode = code;
+					return verifyResultTemplate(model, verifyParams, outcome.code() != null ?
+							"Code matched. Verification successful." : "Verification successful."
+					);
+				});
 			}
-			else {
-				try {
-					getVerifyClient().checkVerificationCode(verifyParams.requestId, verifyParams.userCode);
-					result = "Code matched. Verification successful.";
-				}
-				catch (VerifyResponseException ex) {
-					result = ex.getMessage();
-				}
+			String result;
+			try {
+				timeApiCall(Metrics.ApiClient.VERIFY2, () ->
+						getVerifyClient().checkVerificationCode(verifyParams.requestId, verifyParams.userCode)
+				);
+				result = "Code matched. Verification successful.";
 			}
-			model.addAttribute("result", result);
-			model.addAttribute("verifyParams", verifyParams);
-			return VERIFY_RESULT_TEMPLATE;
+			catch (VerifyResponseException ex) {
+				result = ex.getMessage();
+			}
+			return CompletableFuture.completedFuture(verifyResultTemplate(model, verifyParams, result));
 		}
 		catch (Exception ex) {
-			return errorTemplate(model, ex);
+			return CompletableFuture.completedFuture(errorTemplate(model, ex));
 		}
 	}
 
+	private String verifyResultTemplate(Model model, VerifyParams verifyParams, String result) {
+		model.addAttribute("result", result);
+		model.addAttribute("verifyParams", verifyParams);
+		return VERIFY_RESULT_TEMPLATE;
+	}
+
 	@PostMapping("/cancelVerificationRequest")
 	public String cancelVerificationRequest(@ModelAttribute VerifyParams verifyParams, Model model) {
 		try {
 			String result;
 			try {
-				getVerifyClient().cancelVerification(verifyParams.requestId);
+				timeApiCall(Metrics.ApiClient.VERIFY2, () -> getVerifyClient().cancelVerification(verifyParams.requestId));
 				result = "Verification workflow aborted.";
 			}
 			catch (VerifyResponseException ex) {
@@ -177,9 +245,45 @@ public class VerifyController extends VonageController {
 
 	@ResponseBody
 	@PostMapping(ApplicationConfiguration.VERIFY_STATUS_ENDPOINT)
-	public String eventsWebhook(@RequestBody VerificationCallback payload) {
-		System.out.println(payload.toJson());
-		return standardWebhookResponse();
+	public String eventsWebhook(@RequestBody String payload) {
+		return acceptWebhook(Metrics.WebhookType.VERIFY_STATUS, payload);
+	}
+
+	private void processVerificationCallback(String payload) {
+		var parsed = VerificationCallback.fromJson(payload);
+		var json = parsed.toJson();
+		logger.fine(() -> "Verification callback: " + json);
+		var status = parsed.getStatus();
+		tracker.callback(parsed.getRequestId(), String.valueOf(status), json);
+		if (status == VerificationStatus.COMPLETED) {
+			tracker.completed(parsed.getRequestId());
+			completions.complete(parsed.getRequestId(), new VerificationOutcome(true, null, null));
+		}
+		else if (FAILED_STATUSES.contains(status)) {
+			completions.complete(parsed.getRequestId(), new VerificationOutcome(false, null, status.toString()));
+		}
+	}
+
+	/**
+	 * Returns the channel, submission time and every status callback received for a verification.
+	 */
+	@ResponseBody
+	@GetMapping("/verify/{requestId}/history")
+	public VerificationTracker.History verificationHistory(@PathVariable UUID requestId) {
+		var history = tracker.history(requestId);
+		if (history == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No history for "+requestId);
+		}
+		return history;
+	}
+
+	/**
+	 * Returns how long recent verifications took to complete on each channel.
+	 */
+	@ResponseBody
+	@GetMapping("/verify/latency")
+	public List<VerificationTracker.ChannelLatency> channelLatencies() {
+		return tracker.latencies();
 	}
 
 	@ResponseBody
@@ -215,11 +319,11 @@ public class VerifyController extends VonageController {
 	) {
 		String reason;
 		if (code != null) {
-			var check = getVerifyClient().checkVerificationCode(requestId, code);
+			var check = timeApiCall(Metrics.ApiClient.VERIFY2, () -> getVerifyClient().checkVerificationCode(requestId, code));
 			var status = check.getStatus();
-			if (status == VerificationStatus.COMPLETED) synchronized (successfulVerifications) {
-				successfulVerifications.put(requestId, code);
-				successfulVerifications.notify();
+			if (status == VerificationStatus.COMPLETED) {
+				completions.complete(requestId, new VerificationOutcome(true, code, null));
+				tracker.completed(requestId);
 				return "<h1>Registration successful!</h1>";
 			}
 			else {
@@ -229,6 +333,7 @@ public class VerifyController extends VonageController {
 		else {
 			reason = errorText;
 		}
+		completions.complete(requestId, new VerificationOutcome(false, code, reason));
 		return "<h1>Registration failed: "+reason+"</h1>";
 	}
 
@@ -25,24 +25,76 @@ import com.vonage.client.voice.*;
 import com.vonage.client.voice.ncco.TalkAction;
 import com.vonage.sample.serversdk.springboot.MessagesController.MessageParams;
 
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Controller
 public class VoiceController extends VonageController {
 	static final String
 			VOICE_TEMPLATE = "voice",
-			VOICE_CALL_PARAMS_NAME = "voiceCallParams";
+			VOICE_CALL_PARAMS_NAME = "voiceCallParams",
+			DEFAULT_CALL_FLOW = "greeting";
+	static final Set<CallStatus> FINAL_STATUSES = EnumSet.of(
+			CallStatus.COMPLETED, CallStatus.BUSY, CallStatus.CANCELLED, CallStatus.FAILED,
+			CallStatus.REJECTED, CallStatus.TIMEOUT, CallStatus.UNANSWERED
+	);
 
-	private final Map<String, EventWebhook> callEvents = new HashMap<>();
+	private final EventTimeline<String, EventWebhook> callEvents = new EventTimeline<>();
+	private final CallFlowRegistry callFlows = new CallFlowRegistry();
+
+	@Autowired
+	private CampaignScheduler campaignScheduler;
+
+	record CampaignRequest(List<String> numbers, String tts, TextToSpeechLanguage language,
+						   Boolean premium, Integer ringTimer) {}
+
+	@PostConstruct
+	void init() {
+		getMetrics().registerGauge("vonage_call_timelines", "gauge",
+				"Calls with retained status events.", () -> callEvents.store().size()
+		);
+		getMetrics().registerGauge("vonage_call_timeline_readers", "gauge",
+				"Requests waiting for the next call status event.", callEvents::readerCount
+		);
+		getWebhookPipeline().register(Metrics.WebhookType.VOICE_EVENT, this::processEvent);
+		callFlows.register(DEFAULT_CALL_FLOW, TalkAction.builder("Hello ${from}, thank you for calling.")
+				.language(TextToSpeechLanguage.UNITED_KINGDOM_ENGLISH).build()
+		);
+		callFlows.register("message", TalkAction.builder("${text}")
+				.language(TextToSpeechLanguage.UNITED_KINGDOM_ENGLISH).premium(true).build()
+		);
+		getOutboundJobQueue().register(OutboundJobQueue.Kind.CALL, VoiceCallParams.class, params -> {
+			var call = buildTalkCall(params);
+			return timeApiCall(Metrics.ApiClient.VOICE, () -> getVoiceClient().createCall(call)).getUuid();
+		});
+	}
 
 	protected VoiceClient getVoiceClient() {
 		return getVonageClient().getVoiceClient();
 	}
 
+	private Call buildTalkCall(VoiceCallParams params) {
+		return Call.builder()
+				.machineDetection(MachineDetection.CONTINUE)
+				.to(new PhoneEndpoint(params.toPstn))
+				.ncco(TalkAction.builder(params.tts)
+						.language(params.language)
+						.premium(params.premium).build()
+				).lengthTimer(25)
+				.ringingTimer(params.ringTimer)
+				.fromRandomNumber(true).build();
+	}
+
 	@ResponseBody
 	@GetMapping("getSpokenLanguages")
 	public String getSpokenLanguages() throws Exception {
@@ -66,22 +118,14 @@ public class VoiceController extends VonageController {
 	@PostMapping("textToSpeechRequest")
 	public String textToSpeechRequest(@ModelAttribute(VOICE_CALL_PARAMS_NAME) VoiceCallParams params, Model model) {
 		try {
-			var event = getVoiceClient().createCall(Call.builder()
-					.machineDetection(MachineDetection.CONTINUE)
-					.to(new PhoneEndpoint(params.toPstn))
-					.ncco(TalkAction.builder(params.tts)
-							.language(params.language)
-							.premium(params.premium).build()
-					).lengthTimer(25)
-					.ringingTimer(params.ringTimer)
-					.fromRandomNumber(true).build()
-			);
+			var call = buildTalkCall(params);
+			var event = timeApiCall(Metrics.ApiClient.VOICE, () -> getVoiceClient().createCall(call));
 			params.callId = event.getUuid();
 			model.addAttribute(VOICE_CALL_PARAMS_NAME, params);
 			return VOICE_TEMPLATE;
 		}
 		catch (Exception ex) {
-			return errorTemplate(model, ex);
+			return retryOrErrorTemplate(model, ex, OutboundJobQueue.Kind.CALL, params);
 		}
 	}
 
@@ -95,61 +139,157 @@ public class VoiceController extends VonageController {
 		params.ringTimer = 20;
 
         try {
-			var event = getVoiceClient().createCall(Call.builder()
-					.machineDetection(MachineDetection.CONTINUE)
-					.to(new PhoneEndpoint(params.toPstn))
-					.ncco(TalkAction.builder(params.tts)
-							.language(params.language)
-							.premium(params.premium).build()
-					).lengthTimer(25)
-					.ringingTimer(params.ringTimer)
-					.fromRandomNumber(true).build()
-			);
+			var call = buildTalkCall(params);
+			var event = timeApiCall(Metrics.ApiClient.VOICE, () -> getVoiceClient().createCall(call));
 			messageParams.setMessageId(UUID.fromString(event.getUuid()));
 			model.addAttribute(MessagesController.MESSAGE_PARAMS_NAME, messageParams);
 			return MessagesController.COMMAND_CENTRE_TEMPLATE;
 		}
 		catch (Exception ex) {
-			return errorTemplate(model, ex);
+			return retryOrErrorTemplate(model, ex, OutboundJobQueue.Kind.CALL, params);
 		}
 	}
 
+	/**
+	 * Starts calling every number in the request with the same text-to-speech message.
+	 */
+	@ResponseBody
+	@PostMapping("/voice/campaigns")
+	public CampaignScheduler.Progress startCampaign(@RequestBody CampaignRequest request) {
+		if (request.numbers() == null || request.numbers().isEmpty() || request.tts() == null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "numbers and tts are required.");
+		}
+		var template = new VoiceCallParams();
+		template.tts = request.tts();
+		template.language = request.language() != null ? request.language() : TextToSpeechLanguage.UNITED_KINGDOM_ENGLISH;
+		template.premium = request.premium() != null && request.premium();
+		template.ringTimer = request.ringTimer() != null ? request.ringTimer() : 20;
+		return campaignScheduler.start(request.numbers(), number -> {
+			var params = template.forNumber(number);
+			var call = buildTalkCall(params);
+			return timeApiCall(Metrics.ApiClient.VOICE, () -> getVoiceClient().createCall(call)).getUuid();
+		});
+	}
+
+	@ResponseBody
+	@GetMapping("/voice/campaigns")
+	public List<CampaignScheduler.Progress> listCampaigns() {
+		return campaignScheduler.list();
+	}
+
+	@ResponseBody
+	@GetMapping("/voice/campaigns/{id}")
+	public CampaignScheduler.Progress campaignProgress(@PathVariable UUID id) {
+		return requireCampaign(campaignScheduler.progress(id));
+	}
+
+	@ResponseBody
+	@PostMapping("/voice/campaigns/{id}/cancel")
+	public CampaignScheduler.Progress cancelCampaign(@PathVariable UUID id) {
+		return requireCampaign(campaignScheduler.cancel(id));
+	}
+
+	private static CampaignScheduler.Progress requireCampaign(CampaignScheduler.Progress progress) {
+		if (progress == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No such campaign.");
+		}
+		return progress;
+	}
+
+	/**
+	 * Returns the latest status event after the given sequence number, waiting for one if needed.
+	 */
 	@ResponseBody
 	@GetMapping("getVoiceCallStatusUpdate")
-	public String getVoiceCallStatusUpdate(@RequestParam String callId, @RequestParam long timeout) {
-		EventWebhook event;
-		synchronized (callEvents) {
-			if ((event = callEvents.remove(callId)) == null) {
-				try {
-					callEvents.wait(timeout);
-				}
-				catch (InterruptedException ie) {
-					// Continue
-				}
-				event = callEvents.remove(callId);
-			}
-		}
-		if (event == null) return "";
+	public CompletableFuture<String> getVoiceCallStatusUpdate(@RequestParam String callId, @RequestParam long timeout,
+			@RequestParam(defaultValue = "0") long after) {
+		return callEvents.read(callId, after, timeout).thenApply(events ->
+				events.isEmpty() ? "" : formatEvent(events.get(events.size() - 1))
+		);
+	}
+
+	/**
+	 * Returns every retained status event after the given sequence number, oldest first, waiting
+	 * for the next one if there are none yet. Pass the returned {@code next} value as {@code after}
+	 * to continue from where this response ended.
+	 */
+	@ResponseBody
+	@GetMapping("getVoiceCallEvents")
+	public CompletableFuture<String> getVoiceCallEvents(@RequestParam String callId,
+			@RequestParam(defaultValue = "0") long after, @RequestParam(defaultValue = "0") long timeout) {
+		return callEvents.read(callId, after, timeout).thenApply(events -> {
+			long next = events.isEmpty() ? after : events.get(events.size() - 1).sequence();
+			return "{\"events\":[" + events.stream().map(this::formatEvent).collect(Collectors.joining(",")) +
+					"],\"next\":" + next + "}";
+		});
+	}
+
+	/**
+	 * Streams each status change of the call as a {@code status} event until the call ends.
+	 * Reconnecting clients resume after the last event they received.
+	 */
+	@GetMapping(value = "/voice/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter callStatusEvents(@RequestParam String callId,
+			@RequestHeader(value = "Last-Event-ID", defaultValue = "0") long lastEventId) {
+		return new SseRelay(EVENT_STREAM_TIMEOUT)
+				.relay(callEvents, callId, lastEventId, "status", this::formatEventWebhook,
+						event -> FINAL_STATUSES.contains(event.getStatus())
+				)
+				.emitter();
+	}
+
+	private String formatEvent(EventTimeline.Event<EventWebhook> event) {
+		var webhook = event.value();
+		return "{\"sequence\":"+event.sequence()+",\"status\":\""+webhook.getStatus()+
+				"\",\"detail\":\""+webhook.getDetail()+"\"}";
+	}
+
+	private String formatEventWebhook(EventWebhook event) {
 		return "{\"status\":\""+event.getStatus()+"\",\"detail\":\""+event.getDetail()+"\"}";
 	}
 
+	/**
+	 * Returns the NCCO of the call flow named by the {@code flow} query parameter. Other query
+	 * parameters fill the flow's placeholders, along with {@code from}, {@code to} and {@code uuid}
+	 * taken from the webhook itself.
+	 */
 	@ResponseBody
-	@PostMapping(ApplicationConfiguration.VOICE_ANSWER_ENDPOINT)
-	public String answerWebhook(@RequestBody String payload) {
+	@PostMapping(value = ApplicationConfiguration.VOICE_ANSWER_ENDPOINT, produces = MediaType.APPLICATION_JSON_VALUE)
+	public String answerWebhook(@RequestParam(defaultValue = DEFAULT_CALL_FLOW) String flow,
+								@RequestParam Map<String, String> params, @RequestBody String payload) {
 		var parsed = AnswerWebhook.fromJson(payload);
 		logger.info("Call "+parsed.getUuid()+" answered");
-		return standardWebhookResponse();
+		if (!callFlows.contains(flow)) {
+			logger.warning("Unknown call flow '"+flow+"', using "+DEFAULT_CALL_FLOW);
+			flow = DEFAULT_CALL_FLOW;
+		}
+		var values = new HashMap<>(params);
+		values.put("from", parsed.getFrom());
+		values.put("to", parsed.getTo());
+		values.put("uuid", parsed.getUuid());
+		return callFlows.render(flow, values);
+	}
+
+	@ResponseBody
+	@GetMapping("/voice/flows")
+	public Map<String, List<String>> callFlows() {
+		var result = new TreeMap<String, List<String>>();
+		for (var name : callFlows.names()) {
+			result.put(name, callFlows.parameters(name));
+		}
+		return result;
 	}
 
 	@ResponseBody
 	@PostMapping(ApplicationConfiguration.VOICE_EVENT_ENDPOINT)
 	public String eventWebhook(@RequestBody String payload) {
+		return acceptWebhook(Metrics.WebhookType.VOICE_EVENT, payload);
+	}
+
+	private void processEvent(String payload) {
 		var parsed = EventWebhook.fromJson(payload);
-		synchronized (callEvents) {
-			callEvents.put(parsed.getCallUuid(), parsed);
-			callEvents.notify();
-		}
-		return standardWebhookResponse();
+		callEvents.append(parsed.getCallUuid(), parsed);
+		campaignScheduler.callEvent(parsed.getCallUuid(), parsed.getStatus());
 	}
 
 	public static class VoiceCallParams {
@@ -158,6 +298,16 @@ public class VoiceController extends VonageController {
 		private boolean premium;
 		private Integer ringTimer;
 
+		VoiceCallParams forNumber(String toPstn) {
+			var copy = new VoiceCallParams();
+			copy.language = language;
+			copy.toPstn = toPstn;
+			copy.tts = tts;
+			copy.premium = premium;
+			copy.ringTimer = ringTimer;
+			return copy;
+		}
+
 		public TextToSpeechLanguage getLanguage() {
 			return language;
 		}
@@ -22,30 +22,84 @@
 package com.vonage.sample.serversdk.springboot;
 
 import com.vonage.client.VonageClient;
+import com.vonage.client.messages.MessagesClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.ui.Model;
 import java.net.URI;
 import java.text.NumberFormat;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.Currency;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 public abstract class VonageController {
 	static final String ERROR_TEMPLATE = "error";
+	static final Duration EVENT_STREAM_TIMEOUT = Duration.ofMinutes(5);
 
 	protected Logger logger = Logger.getLogger("controller");
 
 	@Autowired
 	private ApplicationConfiguration configuration;
 
+	@Autowired
+	private Metrics metrics;
+
+	@Autowired
+	private WebhookPipeline webhookPipeline;
+
+	@Autowired
+	private OutboundJobQueue outboundJobQueue;
+
+	protected ApplicationConfiguration getConfiguration() {
+		return configuration;
+	}
+
 	protected VonageClient getVonageClient() {
 		return configuration.vonageClient;
 	}
 
+	/**
+	 * Returns the Messages client for the requested endpoint. The two clients are configured once
+	 * at startup and never switched, so sandbox and production sends can run concurrently.
+	 */
+	protected MessagesClient getMessagesClient(boolean sandbox) {
+		return configuration.messagesClient(sandbox);
+	}
+
+	protected Metrics getMetrics() {
+		return metrics;
+	}
+
+	protected WebhookPipeline getWebhookPipeline() {
+		return webhookPipeline;
+	}
+
+	/**
+	 * Hands the raw webhook body to the pipeline and acknowledges it without waiting for processing.
+	 */
+	protected String acceptWebhook(Metrics.WebhookType type, String payload) {
+		metrics.webhookReceived(type);
+		webhookPipeline.submit(type, payload);
+		return standardWebhookResponse();
+	}
+
+	protected OutboundJobQueue getOutboundJobQueue() {
+		return outboundJobQueue;
+	}
+
+	protected <T> T timeApiCall(Metrics.ApiClient client, Supplier<T> call) {
+		return metrics.timeApiCall(client, call);
+	}
+
+	protected void timeApiCall(Metrics.ApiClient client, Runnable call) {
+		metrics.timeApiCall(client, call);
+	}
+
 	protected URI getServerUrl() {
 		return configuration.serverUrl;
 	}
@@ -55,6 +109,19 @@ public abstract class VonageController {
 		return ERROR_TEMPLATE;
 	}
 
+	/**
+	 * Queues the send for retry if it failed with a transient error, otherwise behaves like
+	 * {@link #errorTemplate(Model, Exception)}.
+	 */
+	protected String retryOrErrorTemplate(Model model, Exception ex, OutboundJobQueue.Kind kind, Object params) {
+		if (!OutboundJobQueue.isRetryable(ex)) {
+			return errorTemplate(model, ex);
+		}
+		long jobId = outboundJobQueue.enqueue(kind, params);
+		model.addAttribute("message", ex.getMessage() + " (queued for retry as job " + jobId + ")");
+		return ERROR_TEMPLATE;
+	}
+
 	protected String standardWebhookResponse() {
 		return "OK";
 	}
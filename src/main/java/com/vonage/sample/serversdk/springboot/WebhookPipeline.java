@@ -0,0 +1,230 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Decouples acknowledging a webhook from processing it. Raw bodies go into bounded queues and
+ * worker threads parse and dispatch them in batches to the handler registered for their type.
+ * Each worker has its own queue, and webhooks are routed by the message, call or request ID they
+ * concern, so events for the same ID are always processed in the order they arrived.
+ */
+@Component
+public class WebhookPipeline {
+	private final Logger logger = Logger.getLogger("webhooks");
+
+	/**
+	 * What to do with a webhook when the queue is full.
+	 */
+	enum Overflow {
+		/**
+		 * Wait up to the offer timeout for space, then reject.
+		 */
+		BLOCK,
+
+		/**
+		 * Reject immediately with 503 so that Vonage retries the webhook later.
+		 */
+		REJECT,
+
+		/**
+		 * Process the webhook on the request thread.
+		 */
+		CALLER_RUNS
+	}
+
+	private record Job(Metrics.WebhookType type, String body) {}
+
+	/**
+	 * The field identifying what each type of webhook is about; its value picks the worker.
+	 */
+	private static final Map<Metrics.WebhookType, Pattern> PARTITION_KEYS = new EnumMap<>(Map.of(
+			Metrics.WebhookType.INBOUND_MESSAGE, partitionKey("message_uuid"),
+			Metrics.WebhookType.MESSAGE_STATUS, partitionKey("message_uuid"),
+			Metrics.WebhookType.VOICE_EVENT, partitionKey("uuid"),
+			Metrics.WebhookType.VERIFY_STATUS, partitionKey("request_id")
+	));
+
+	private static Pattern partitionKey(String field) {
+		return Pattern.compile("\"" + field + "\"\\s*:\\s*\"([^\"]+)\"");
+	}
+
+	@Autowired
+	private ApplicationConfiguration configuration;
+
+	@Autowired
+	private Metrics metrics;
+
+	private final AtomicReferenceArray<Consumer<String>> handlers =
+			new AtomicReferenceArray<>(Metrics.WebhookType.values().length);
+	private final LongAdder processed = new LongAdder(), rejected = new LongAdder(), failed = new LongAdder();
+	private List<BlockingQueue<Job>> queues;
+	private List<Thread> workers;
+	private volatile boolean running;
+
+	@PostConstruct
+	void start() {
+		var params = configuration.webhooks;
+		int perWorkerCapacity = Math.max(1, params.queueCapacity() / params.workers());
+		running = true;
+		queues = new ArrayList<>(params.workers());
+		workers = new ArrayList<>(params.workers());
+		for (int i = 0; i < params.workers(); i++) {
+			var queue = new ArrayBlockingQueue<Job>(perWorkerCapacity);
+			queues.add(queue);
+			var worker = new Thread(() -> drainLoop(queue, params.batchSize()), "webhook-worker-" + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+		metrics.registerGauge("vonage_webhook_queue_depth", "gauge",
+				"Webhooks accepted but not yet processed.", () -> queues.stream().mapToLong(BlockingQueue::size).sum()
+		);
+		metrics.registerGauge("vonage_webhook_processed_total", "counter",
+				"Webhooks processed by the pipeline workers.", processed::sum
+		);
+		metrics.registerGauge("vonage_webhook_rejected_total", "counter",
+				"Webhooks rejected because the pipeline queue was full.", rejected::sum
+		);
+		metrics.registerGauge("vonage_webhook_failed_total", "counter",
+				"Webhooks whose handler threw.", failed::sum
+		);
+	}
+
+	@PreDestroy
+	void stop() throws InterruptedException {
+		running = false;
+		for (var worker : workers) {
+			worker.interrupt();
+		}
+		for (var worker : workers) {
+			worker.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		List<Job> remaining = new ArrayList<>();
+		for (var queue : queues) {
+			queue.drainTo(remaining);
+		}
+		remaining.forEach(this::dispatch);
+	}
+
+	/**
+	 * Sets the handler that parses and applies webhooks of the given type on a worker thread.
+	 */
+	void register(Metrics.WebhookType type, Consumer<String> handler) {
+		handlers.set(type.ordinal(), handler);
+	}
+
+	/**
+	 * Picks the queue for the webhook from its partition key. Bodies without one can go anywhere.
+	 */
+	private BlockingQueue<Job> queueFor(Metrics.WebhookType type, String body) {
+		var matcher = PARTITION_KEYS.get(type).matcher(body);
+		int hash = matcher.find() ? matcher.group(1).hashCode() : ThreadLocalRandom.current().nextInt();
+		return queues.get(Math.floorMod(hash, queues.size()));
+	}
+
+	/**
+	 * Queues the raw webhook body for processing, applying the configured overflow policy.
+	 * {@link Overflow#CALLER_RUNS} processes on the request thread, so a webhook handled that way
+	 * may overtake earlier ones for the same ID that are still queued.
+	 *
+	 * @throws ResponseStatusException With status 503 if the webhook could not be accepted.
+	 */
+	void submit(Metrics.WebhookType type, String body) {
+		var job = new Job(type, body);
+		var queue = queueFor(type, body);
+		if (queue.offer(job)) return;
+
+		var params = configuration.webhooks;
+		switch (params.overflow()) {
+			case CALLER_RUNS -> {
+				dispatch(job);
+				return;
+			}
+			case BLOCK -> {
+				try {
+					if (queue.offer(job, params.offerTimeout().toMillis(), TimeUnit.MILLISECONDS)) return;
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			case REJECT -> {}
+		}
+		rejected.increment();
+		throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Webhook queue full.");
+	}
+
+	private void drainLoop(BlockingQueue<Job> queue, int batchSize) {
+		var batch = new ArrayList<Job>(batchSize);
+		while (running) {
+			try {
+				batch.add(queue.take());
+				queue.drainTo(batch, batchSize - 1);
+				for (var job : batch) {
+					dispatch(job);
+				}
+			}
+			catch (InterruptedException ie) {
+				if (!running) return;
+			}
+			finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void dispatch(Job job) {
+		var handler = handlers.get(job.type.ordinal());
+		try {
+			if (handler == null) {
+				throw new IllegalStateException("No handler registered for "+job.type);
+			}
+			handler.accept(job.body);
+			processed.increment();
+		}
+		catch (RuntimeException ex) {
+			failed.increment();
+			logger.log(Level.WARNING, "Failed to process "+job.type+" webhook", ex);
+		}
+	}
+}
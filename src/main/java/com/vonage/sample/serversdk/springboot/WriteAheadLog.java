@@ -0,0 +1,286 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal stored in fixed-size memory-mapped segment files. Appends are memory
+ * copies; a single flusher thread forces the mapping to disk and releases every writer whose
+ * record was covered, so concurrent writers share one fsync (group commit).
+ * <p>
+ * Each record is {@code [int length][int crc32][byte type][long id][payload]}. A zero length
+ * marks the end of a segment, and a checksum mismatch marks a torn write. When a segment fills
+ * up, the records still live are copied into a fresh segment and older segments are deleted.
+ */
+final class WriteAheadLog implements Closeable {
+	private static final int HEADER_BYTES = 8, BODY_PREFIX_BYTES = 9;
+	private static final String SEGMENT_PREFIX = "segment-", SEGMENT_SUFFIX = ".wal";
+
+	private final Logger logger = Logger.getLogger("wal");
+	private final Path directory;
+	private final int segmentBytes;
+	private final Supplier<Collection<Entry>> liveEntries;
+	private final Object durableLock = new Object();
+	private final Thread flusher;
+
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private long segmentIndex, written;
+	private volatile long durable;
+	private volatile boolean running;
+
+	record Entry(byte type, long id, byte[] payload) {}
+
+	/**
+	 * @param directory Where segment files are kept; created if missing.
+	 * @param segmentBytes Size of each mapped segment. Must hold every live entry at once.
+	 * @param liveEntries Supplies the entries to carry over when a new segment is started.
+	 */
+	WriteAheadLog(Path directory, int segmentBytes, Supplier<Collection<Entry>> liveEntries) {
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.liveEntries = liveEntries;
+		flusher = new Thread(this::flushLoop, "wal-flusher");
+		flusher.setDaemon(true);
+	}
+
+	private Path segmentPath(long index) {
+		return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+	}
+
+	private static long segmentIndex(Path path) {
+		var name = path.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	private List<Path> existingSegments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(p -> {
+				var name = p.getFileName().toString();
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}).sorted().toList();
+		}
+	}
+
+	/**
+	 * Reads every intact record from the existing segments, oldest first. Must be called before {@link #start()}.
+	 */
+	synchronized List<Entry> recover() throws IOException {
+		Files.createDirectories(directory);
+		var entries = new ArrayList<Entry>();
+		for (var path : existingSegments()) {
+			segmentIndex = Math.max(segmentIndex, segmentIndex(path));
+			try (var file = FileChannel.open(path, StandardOpenOption.READ)) {
+				readSegment(file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()), entries, path);
+			}
+		}
+		return entries;
+	}
+
+	private void readSegment(ByteBuffer segment, List<Entry> into, Path path) {
+		var crc = new CRC32();
+		while (segment.remaining() >= HEADER_BYTES) {
+			int length = segment.getInt(), checksum = segment.getInt();
+			if (length == 0) return;
+			if (length < BODY_PREFIX_BYTES || length > segment.remaining()) {
+				logger.warning("Truncated record in "+path+"; ignoring the rest of the segment.");
+				return;
+			}
+			var body = segment.slice(segment.position(), length);
+			crc.reset();
+			crc.update(body.duplicate());
+			if ((int) crc.getValue() != checksum) {
+				logger.warning("Checksum mismatch in "+path+"; ignoring the rest of the segment.");
+				return;
+			}
+			byte type = body.get();
+			long id = body.getLong();
+			var payload = new byte[length - BODY_PREFIX_BYTES];
+			body.get(payload);
+			into.add(new Entry(type, id, payload));
+			segment.position(segment.position() + length);
+		}
+	}
+
+	/**
+	 * Opens a fresh segment holding the current live entries, removes the recovered segments
+	 * and starts the flusher.
+	 */
+	synchronized void start() throws IOException {
+		rollover();
+		running = true;
+		flusher.start();
+	}
+
+	private void rollover() throws IOException {
+		var previous = existingSegments();
+		if (buffer != null) {
+			buffer.force();
+			channel.close();
+		}
+		var path = segmentPath(++segmentIndex);
+		channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE
+		);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+		for (var entry : liveEntries.get()) {
+			if (!write(entry.type, entry.id, entry.payload)) {
+				throw new IllegalStateException("Live entries do not fit in a "+segmentBytes+" byte segment.");
+			}
+		}
+		buffer.force();
+		synchronized (durableLock) {
+			durable = written;
+			durableLock.notifyAll();
+		}
+		for (var old : previous) {
+			Files.deleteIfExists(old);
+		}
+	}
+
+	private boolean write(byte type, long id, byte[] payload) {
+		int length = BODY_PREFIX_BYTES + payload.length;
+		if (buffer.remaining() < HEADER_BYTES + length) return false;
+		int start = buffer.position();
+		buffer.position(start + HEADER_BYTES);
+		buffer.put(type).putLong(id).put(payload);
+		var crc = new CRC32();
+		crc.update(buffer.slice(start + HEADER_BYTES, length));
+		buffer.putInt(start, length).putInt(start + 4, (int) crc.getValue());
+		written += HEADER_BYTES + length;
+		return true;
+	}
+
+	/**
+	 * Appends a record without waiting for it to reach disk.
+	 *
+	 * @return The log position to pass to {@link #awaitDurable(long)}.
+	 */
+	synchronized long append(byte type, long id, byte[] payload) {
+		return append(type, id, payload, null);
+	}
+
+	/**
+	 * As {@link #append(byte, long, byte[])}, running {@code onWritten} once the record is in the
+	 * current segment and before any other append can start a new one. Adding the record's entry
+	 * to the live entries there means it is carried over by the next rollover exactly once.
+	 */
+	synchronized long append(byte type, long id, byte[] payload, Runnable onWritten) {
+		if (!running) {
+			throw new IllegalStateException("Log is not open.");
+		}
+		try {
+			if (!write(type, id, payload)) {
+				rollover();
+				if (!write(type, id, payload)) {
+					throw new IllegalArgumentException("Record larger than a segment.");
+				}
+			}
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		if (onWritten != null) {
+			onWritten.run();
+		}
+		notifyAll();
+		return written;
+	}
+
+	/**
+	 * Blocks until every record up to the given position has been forced to disk.
+	 */
+	void awaitDurable(long position) throws InterruptedException {
+		synchronized (durableLock) {
+			while (durable < position) {
+				if (!running) {
+					throw new IllegalStateException("Log closed before the record was flushed.");
+				}
+				durableLock.wait();
+			}
+		}
+	}
+
+	private void flushLoop() {
+		while (running) {
+			long target;
+			MappedByteBuffer toForce;
+			synchronized (this) {
+				try {
+					while (running && written == durable) {
+						wait();
+					}
+				}
+				catch (InterruptedException ie) {
+					continue;
+				}
+				target = written;
+				toForce = buffer;
+			}
+			// Records appended while this runs are picked up by the next iteration.
+			toForce.force();
+			synchronized (durableLock) {
+				durable = Math.max(durable, target);
+				durableLock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (!running) return;
+			running = false;
+			notifyAll();
+		}
+		try {
+			flusher.join();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			buffer.force();
+			channel.close();
+		}
+		synchronized (durableLock) {
+			durable = written;
+			durableLock.notifyAll();
+		}
+	}
+}
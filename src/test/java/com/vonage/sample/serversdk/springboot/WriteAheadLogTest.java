@@ -0,0 +1,176 @@
+/*
+ * Copyright 2024 Vonage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.vonage.sample.serversdk.springboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+class WriteAheadLogTest {
+	private static final byte TYPE = 1;
+
+	@TempDir
+	Path directory;
+
+	private static byte[] payload(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<String> payloads(List<WriteAheadLog.Entry> entries) {
+		return entries.stream().map(e -> new String(e.payload(), StandardCharsets.UTF_8)).toList();
+	}
+
+	private WriteAheadLog open(int segmentBytes, Supplier<Collection<WriteAheadLog.Entry>> live) throws IOException {
+		var log = new WriteAheadLog(directory, segmentBytes, live);
+		log.recover();
+		log.start();
+		return log;
+	}
+
+	private List<WriteAheadLog.Entry> recover(int segmentBytes) throws IOException {
+		return new WriteAheadLog(directory, segmentBytes, List::of).recover();
+	}
+
+	private Path onlySegment() throws IOException {
+		try (var files = Files.list(directory)) {
+			var segments = files.toList();
+			assertEquals(1, segments.size());
+			return segments.get(0);
+		}
+	}
+
+	@Test
+	void replaysDurableRecordsInOrder() throws Exception {
+		var log = open(4096, List::of);
+		long position = 0;
+		for (int i = 1; i <= 3; i++) {
+			position = log.append(TYPE, i, payload("job-" + i));
+		}
+		log.awaitDurable(position);
+		log.close();
+
+		var entries = recover(4096);
+		assertEquals(List.of("job-1", "job-2", "job-3"), payloads(entries));
+		assertEquals(List.of(1L, 2L, 3L), entries.stream().map(WriteAheadLog.Entry::id).toList());
+	}
+
+	@Test
+	void stopsAtTornRecord() throws Exception {
+		var log = open(4096, List::of);
+		log.append(TYPE, 1, payload("intact"));
+		log.awaitDurable(log.append(TYPE, 2, payload("torn")));
+		log.close();
+
+		// Flip the last payload byte of the second record, as if the write had been cut short.
+		var segment = onlySegment();
+		var bytes = Files.readAllBytes(segment);
+		var buffer = ByteBuffer.wrap(bytes);
+		int firstLength = buffer.getInt(0);
+		int secondStart = 8 + firstLength, secondLength = buffer.getInt(secondStart);
+		bytes[secondStart + 8 + secondLength - 1] ^= 0x7f;
+		Files.write(segment, bytes);
+
+		assertEquals(List.of("intact"), payloads(recover(4096)));
+	}
+
+	@Test
+	void ignoresTruncatedLength() throws Exception {
+		var log = open(4096, List::of);
+		log.awaitDurable(log.append(TYPE, 1, payload("intact")));
+		log.close();
+
+		var segment = onlySegment();
+		var bytes = Files.readAllBytes(segment);
+		int secondStart = 8 + ByteBuffer.wrap(bytes).getInt(0);
+		ByteBuffer.wrap(bytes).putInt(secondStart, bytes.length);
+		Files.write(segment, bytes);
+
+		assertEquals(List.of("intact"), payloads(recover(4096)));
+	}
+
+	@Test
+	void rolloverCarriesLiveEntriesAndDropsOldSegments() throws Exception {
+		var live = new ArrayList<WriteAheadLog.Entry>();
+		// Each record is 8 + 9 + 8 = 25 bytes, so a 128 byte segment holds five.
+		var log = open(128, () -> List.copyOf(live));
+		long position = 0;
+		for (int i = 1; i <= 5; i++) {
+			position = log.append(TYPE, i, payload("record-" + i));
+		}
+		live.add(new WriteAheadLog.Entry(TYPE, 4, payload("record-4")));
+		live.add(new WriteAheadLog.Entry(TYPE, 5, payload("record-5")));
+		position = log.append(TYPE, 6, payload("record-6"));
+		log.awaitDurable(position);
+		log.close();
+
+		onlySegment();
+		assertEquals(List.of("record-4", "record-5", "record-6"), payloads(recover(128)));
+	}
+
+	@Test
+	void entryPublishedOnWriteIsCarriedOverOnce() throws Exception {
+		var live = new ArrayList<WriteAheadLog.Entry>();
+		var log = open(128, () -> List.copyOf(live));
+		for (int i = 1; i <= 5; i++) {
+			var entry = new WriteAheadLog.Entry(TYPE, i, payload("record-" + i));
+			log.append(TYPE, i, entry.payload(), i < 4 ? null : () -> live.add(entry));
+		}
+		// The sixth record rolls over before it is written, so it is not among the entries copied.
+		var sixth = new WriteAheadLog.Entry(TYPE, 6, payload("record-6"));
+		long position = log.append(TYPE, 6, sixth.payload(), () -> live.add(sixth));
+		log.awaitDurable(position);
+		log.close();
+
+		assertEquals(List.of("record-4", "record-5", "record-6"), payloads(recover(128)));
+	}
+
+	@Test
+	void restartRewritesLiveEntries() throws Exception {
+		var log = open(4096, List::of);
+		log.awaitDurable(log.append(TYPE, 1, payload("pending")));
+		log.close();
+
+		var recovered = new ArrayList<WriteAheadLog.Entry>();
+		var reopened = new WriteAheadLog(directory, 4096, () -> recovered);
+		recovered.addAll(reopened.recover());
+		reopened.start();
+		reopened.close();
+
+		assertEquals(List.of("pending"), payloads(recover(4096)));
+	}
+
+	@Test
+	void rejectsAppendAfterClose() throws Exception {
+		var log = open(4096, List::of);
+		log.close();
+		assertThrows(IllegalStateException.class, () -> log.append(TYPE, 1, payload("late")));
+	}
+}